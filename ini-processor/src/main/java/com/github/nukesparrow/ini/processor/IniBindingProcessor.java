@@ -0,0 +1,459 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini.processor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Generates {@code <Name>IniBinder} for every class and interface annotated
+ * by {@code @IniBinding}, and {@code <Name>IniImpl} for interfaces, and
+ * registers binders in {@code META-INF/services}, so
+ * {@code IniUtil.binder(Class)} finds them.
+ *
+ * Generated code converts values by direct calls: primitives are parsed,
+ * String, File and VFile are handled as by {@code IniUtil.loadPOJO}, other
+ * types are created by their static {@code valueOf(String)} or
+ * {@code String} constructor. Only types without them use converters
+ * registered in IniUtil.
+ *
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+@SupportedAnnotationTypes(IniBindingProcessor.BINDING)
+public class IniBindingProcessor extends AbstractProcessor {
+
+    private static final String INI = "com.github.nukesparrow.ini.";
+    static final String BINDING = INI + "IniBinding";
+    private static final String KEY_NAME = INI + "IniKeyName";
+    private static final String DEFAULT = INI + "IniDefault";
+    private static final String BINDER = INI + "IniBinder";
+    private static final String SERVICES = "META-INF/services/" + BINDER;
+
+    private final Set<String> binders = new LinkedHashSet<String>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+        TypeElement binding = elements().getTypeElement(BINDING);
+        if (binding != null) {
+            for (Element e : round.getElementsAnnotatedWith(binding)) {
+                TypeElement t = (TypeElement) e;
+                try {
+                    if (!check(t))
+                        continue;
+                    if (t.getKind() == ElementKind.INTERFACE)
+                        generateInterface(t);
+                    else
+                        generateClass(t);
+                } catch (IOException ex) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unable to generate binder: " + ex, t);
+                }
+            }
+        }
+        if (round.processingOver() && !binders.isEmpty())
+            writeServices();
+        return true;
+    }
+
+    private Elements elements() {
+        return processingEnv.getElementUtils();
+    }
+
+    private Types types() {
+        return processingEnv.getTypeUtils();
+    }
+
+    private boolean check(TypeElement t) {
+        String error = null;
+        if (t.getKind() != ElementKind.CLASS && t.getKind() != ElementKind.INTERFACE)
+            error = "@IniBinding is applicable to classes and interfaces";
+        else if (!t.getTypeParameters().isEmpty())
+            error = "@IniBinding type can't be generic";
+        else if (t.getModifiers().contains(Modifier.PRIVATE))
+            error = "@IniBinding type can't be private";
+        else if (t.getNestingKind() == NestingKind.MEMBER && !t.getModifiers().contains(Modifier.STATIC) && t.getKind() == ElementKind.CLASS)
+            error = "@IniBinding class can't be inner class";
+        if (error != null)
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, error, t);
+        return error == null;
+    }
+
+    /**
+     * @return name of generated class in package of type, names of nesting
+     * types are joined by underscore
+     */
+    private String flatName(TypeElement t) {
+        String n = t.getSimpleName().toString();
+        for (Element e = t.getEnclosingElement(); e instanceof TypeElement; e = e.getEnclosingElement())
+            n = e.getSimpleName() + "_" + n;
+        return n;
+    }
+
+    private String packageName(TypeElement t) {
+        return elements().getPackageOf(t).getQualifiedName().toString();
+    }
+
+    private void generateClass(TypeElement t) throws IOException {
+        String type = t.getQualifiedName().toString();
+        String name = flatName(t) + "IniBinder";
+        StringBuilder b = header(t);
+        b.append("public final class ").append(name).append(" implements ").append(BINDER).append('<').append(type).append("> {\n\n");
+        b.append("    public Class<").append(type).append("> getType() {\n");
+        b.append("        return ").append(type).append(".class;\n");
+        b.append("    }\n\n");
+
+        b.append("    public ").append(type).append(" load(").append(INI).append("IniProperties properties, ").append(type).append(" obj, com.github.nukesparrow.virtfs.VFilesystem vfs) {\n");
+        b.append("        String v;\n");
+        List<? extends Element> members = elements().getAllMembers(t);
+        for (VariableElement f : ElementFilter.fieldsIn(members)) {
+            if (!f.getModifiers().contains(Modifier.PUBLIC))
+                continue;
+            String key = keyName(f, f.getSimpleName().toString());
+            b.append("        if ((v = properties.get(").append(literal(key)).append(")) != null)\n");
+            if (f.getModifiers().contains(Modifier.FINAL)) {
+                b.append("            throw new RuntimeException(new IllegalAccessException(")
+                        .append(literal("Can not set final field " + type + "." + f.getSimpleName())).append("));\n");
+            } else {
+                String target = f.getModifiers().contains(Modifier.STATIC) ? type : "obj";
+                b.append("            ").append(target).append('.').append(f.getSimpleName()).append(" = ").append(convert(f.asType(), "v")).append(";\n");
+            }
+        }
+        for (ExecutableElement m : ElementFilter.methodsIn(members)) {
+            if (!m.getModifiers().contains(Modifier.PUBLIC) || m.getParameters().size() != 1)
+                continue;
+            String methodName = m.getSimpleName().toString();
+            String derived = methodName.length() > 3 && methodName.startsWith("set")
+                    ? Character.toLowerCase(methodName.charAt(3)) + methodName.substring(4) : null;
+            String key = keyName(m, derived);
+            if (key == null)
+                continue;
+            String target = m.getModifiers().contains(Modifier.STATIC) ? type : "obj";
+            TypeMirror pt = m.getParameters().get(0).asType();
+            // value is converted before the call, so only exceptions of setter are wrapped, as by IniUtil
+            b.append("        if ((v = properties.get(").append(literal(key)).append(")) != null) {\n");
+            b.append("            ").append(pt).append(" p = ").append(convert(pt, "v")).append(";\n");
+            b.append("            try {\n");
+            b.append("                ").append(target).append('.').append(methodName).append("(p);\n");
+            b.append("            } catch (Throwable ex) {\n");
+            b.append("                throw new RuntimeException(new java.lang.reflect.InvocationTargetException(ex));\n");
+            b.append("            }\n");
+            b.append("        }\n");
+        }
+        b.append("        return obj;\n");
+        b.append("    }\n\n");
+
+        b.append("    public ").append(type).append(" create(").append(INI).append("IniProperties properties, com.github.nukesparrow.virtfs.VFilesystem vfs) {\n");
+        if (hasDefaultConstructor(t))
+            b.append("        return load(properties, new ").append(type).append("(), vfs);\n");
+        else
+            b.append("        throw new UnsupportedOperationException(").append(literal(type + " has no public constructor without parameters")).append(");\n");
+        b.append("    }\n\n");
+        b.append("}\n");
+        write(t, name, b);
+    }
+
+    private boolean hasDefaultConstructor(TypeElement t) {
+        if (t.getModifiers().contains(Modifier.ABSTRACT))
+            return false;
+        for (ExecutableElement c : ElementFilter.constructorsIn(t.getEnclosedElements()))
+            if (c.getModifiers().contains(Modifier.PUBLIC) && c.getParameters().isEmpty())
+                return true;
+        return false;
+    }
+
+    private void generateInterface(TypeElement t) throws IOException {
+        String type = t.getQualifiedName().toString();
+        String impl = flatName(t) + "IniImpl";
+        List<ExecutableElement> getters = new ArrayList<ExecutableElement>();
+        for (ExecutableElement m : ElementFilter.methodsIn(elements().getAllMembers(t))) {
+            if (!m.getModifiers().contains(Modifier.ABSTRACT))
+                continue;
+            if (!m.getParameters().isEmpty() || m.getReturnType().getKind() == TypeKind.VOID) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "@IniBinding interface can have only getters", m);
+                return;
+            }
+            getters.add(m);
+        }
+
+        StringBuilder b = header(t);
+        b.append("/**\n * Reads properties, values are decoded once, and again after properties\n * change, or on every read if properties have no version\n */\n");
+        b.append("public final class ").append(impl).append(" implements ").append(type).append(" {\n\n");
+        b.append("    private static final class Values {\n\n");
+        for (int i = 0; i < getters.size(); i++)
+            b.append("        final ").append(getters.get(i).getReturnType()).append(" f").append(i).append(";\n");
+        b.append('\n');
+        b.append("        Values(").append(INI).append("IniProperties properties, com.github.nukesparrow.virtfs.VFilesystem vfs) {\n");
+        b.append("            String s;\n");
+        for (int i = 0; i < getters.size(); i++) {
+            ExecutableElement m = getters.get(i);
+            TypeMirror rt = m.getReturnType();
+            String def = annotationValue(m, DEFAULT);
+            b.append("            f").append(i).append(" = (s = properties.get(").append(literal(getterKey(m))).append(")) != null ? ")
+                    .append(convert(rt, "s")).append(" : ").append(def != null ? convert(rt, literal(def)) : zero(rt)).append(";\n");
+        }
+        b.append("        }\n\n");
+        b.append("    }\n\n");
+        b.append("    private final ").append(INI).append("IniUtil.Cache<Values> values;\n\n");
+        b.append("    public ").append(impl).append('(').append(INI).append("IniProperties properties, final com.github.nukesparrow.virtfs.VFilesystem vfs) {\n");
+        b.append("        values = new ").append(INI).append("IniUtil.Cache<Values>(properties) {\n\n");
+        b.append("            @Override\n");
+        b.append("            protected Values decode(").append(INI).append("IniProperties properties) {\n");
+        b.append("                return new Values(properties, vfs);\n");
+        b.append("            }\n\n");
+        b.append("        };\n");
+        b.append("        values.get();\n");
+        b.append("    }\n\n");
+
+        for (int i = 0; i < getters.size(); i++) {
+            ExecutableElement m = getters.get(i);
+            b.append("    @Override\n");
+            b.append("    public ").append(m.getReturnType()).append(' ').append(m.getSimpleName()).append("() {\n");
+            b.append("        return values.get().f").append(i).append(";\n");
+            b.append("    }\n\n");
+        }
+        b.append("}\n");
+        write(t, impl, b);
+
+        String name = flatName(t) + "IniBinder";
+        b = header(t);
+        b.append("public final class ").append(name).append(" implements ").append(BINDER).append('<').append(type).append("> {\n\n");
+        b.append("    public Class<").append(type).append("> getType() {\n");
+        b.append("        return ").append(type).append(".class;\n");
+        b.append("    }\n\n");
+        b.append("    public ").append(type).append(" load(").append(INI).append("IniProperties properties, ").append(type).append(" obj, com.github.nukesparrow.virtfs.VFilesystem vfs) {\n");
+        b.append("        throw new UnsupportedOperationException(").append(literal(type + " is interface, use create()")).append(");\n");
+        b.append("    }\n\n");
+        b.append("    public ").append(type).append(" create(").append(INI).append("IniProperties properties, com.github.nukesparrow.virtfs.VFilesystem vfs) {\n");
+        b.append("        return new ").append(impl).append("(properties, vfs);\n");
+        b.append("    }\n\n");
+        b.append("}\n");
+        write(t, name, b);
+    }
+
+    /**
+     * @return key of getter: name given by IniKeyName, or name of property,
+     * or name of method
+     */
+    private String getterKey(ExecutableElement m) {
+        String n = m.getSimpleName().toString();
+        String derived = n;
+        if (n.length() > 3 && n.startsWith("get") && Character.isUpperCase(n.charAt(3)))
+            derived = Character.toLowerCase(n.charAt(3)) + n.substring(4);
+        else if (n.length() > 2 && n.startsWith("is") && Character.isUpperCase(n.charAt(2)) && m.getReturnType().getKind() == TypeKind.BOOLEAN)
+            derived = Character.toLowerCase(n.charAt(2)) + n.substring(3);
+        return keyName(m, derived);
+    }
+
+    private String keyName(Element e, String def) {
+        String n = annotationValue(e, KEY_NAME);
+        return n != null ? n : def;
+    }
+
+    private String annotationValue(Element e, String annotation) {
+        for (AnnotationMirror a : e.getAnnotationMirrors()) {
+            if (!((TypeElement) a.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotation))
+                continue;
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> v : a.getElementValues().entrySet())
+                if (v.getKey().getSimpleName().contentEquals("value"))
+                    return (String) v.getValue().getValue();
+        }
+        return null;
+    }
+
+    /**
+     * @return expression, which converts String expression to type
+     */
+    private String convert(TypeMirror type, String value) {
+        switch (type.getKind()) {
+            case BOOLEAN:
+                return "Boolean.parseBoolean(" + value + ")";
+            case CHAR:
+                return value + ".charAt(0)";
+            case BYTE:
+                return "Byte.parseByte(" + value + ")";
+            case SHORT:
+                return "Short.parseShort(" + value + ")";
+            case INT:
+                return "Integer.parseInt(" + value + ")";
+            case LONG:
+                return "Long.parseLong(" + value + ")";
+            case FLOAT:
+                return "Float.parseFloat(" + value + ")";
+            case DOUBLE:
+                return "Double.parseDouble(" + value + ")";
+            case DECLARED:
+                TypeElement e = (TypeElement) types().asElement(type);
+                String n = e.getQualifiedName().toString();
+                if (n.equals("java.lang.String"))
+                    return value;
+                if (n.equals("java.io.File"))
+                    return "new java.io.File(" + value + ")";
+                if (n.equals("com.github.nukesparrow.virtfs.VFile"))
+                    return "vfs.file(" + value + ")";
+                if (e.getKind() == ElementKind.ENUM || hasValueOf(e, type))
+                    return n + ".valueOf(" + value + ")";
+                if (hasStringConstructor(e))
+                    return "new " + n + "(" + value + ")";
+                break;
+            default:
+                break;
+        }
+        TypeMirror raw = types().erasure(type);
+        return "(" + type + ") " + INI + "IniUtil.converter(" + raw + ".class).convert(" + value + ", vfs)";
+    }
+
+    private boolean hasValueOf(TypeElement e, TypeMirror type) {
+        for (ExecutableElement m : ElementFilter.methodsIn(elements().getAllMembers(e))) {
+            if (m.getSimpleName().contentEquals("valueOf")
+                    && m.getModifiers().contains(Modifier.STATIC) && m.getModifiers().contains(Modifier.PUBLIC)
+                    && m.getParameters().size() == 1 && isString(m.getParameters().get(0).asType())
+                    && types().isAssignable(m.getReturnType(), type))
+                return true;
+        }
+        return false;
+    }
+
+    private boolean hasStringConstructor(TypeElement e) {
+        if (e.getModifiers().contains(Modifier.ABSTRACT))
+            return false;
+        for (ExecutableElement c : ElementFilter.constructorsIn(e.getEnclosedElements()))
+            if (c.getModifiers().contains(Modifier.PUBLIC) && c.getParameters().size() == 1 && isString(c.getParameters().get(0).asType()))
+                return true;
+        return false;
+    }
+
+    private boolean isString(TypeMirror t) {
+        return t.getKind() == TypeKind.DECLARED && ((TypeElement) types().asElement(t)).getQualifiedName().contentEquals("java.lang.String");
+    }
+
+    private static String zero(TypeMirror type) {
+        switch (type.getKind()) {
+            case BOOLEAN:
+                return "false";
+            case CHAR:
+                return "'\\0'";
+            case BYTE:
+                return "(byte) 0";
+            case SHORT:
+                return "(short) 0";
+            case INT:
+                return "0";
+            case LONG:
+                return "0L";
+            case FLOAT:
+                return "0f";
+            case DOUBLE:
+                return "0d";
+            default:
+                return "null";
+        }
+    }
+
+    private String literal(String s) {
+        return elements().getConstantExpression(s);
+    }
+
+    private StringBuilder header(TypeElement t) {
+        StringBuilder b = new StringBuilder();
+        String p = packageName(t);
+        if (!p.isEmpty())
+            b.append("package ").append(p).append(";\n\n");
+        b.append("/*\n * Generated by ").append(IniBindingProcessor.class.getName()).append(" from ").append(t.getQualifiedName()).append("\n */\n");
+        return b;
+    }
+
+    private void write(TypeElement t, String name, StringBuilder b) throws IOException {
+        String p = packageName(t);
+        String qualified = p.isEmpty() ? name : p + "." + name;
+        Writer w = processingEnv.getFiler().createSourceFile(qualified, t).openWriter();
+        try {
+            w.write(b.toString());
+        } finally {
+            w.close();
+        }
+        if (name.endsWith("IniBinder"))
+            binders.add(qualified);
+    }
+
+    /**
+     * Writes service file, binders registered by previous compilation are
+     * kept, so incremental compilation doesn't lose them
+     */
+    private void writeServices() {
+        Set<String> all = new LinkedHashSet<String>();
+        try {
+            FileObject existing = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", SERVICES);
+            BufferedReader r = new BufferedReader(existing.openReader(true));
+            try {
+                String l;
+                while ((l = r.readLine()) != null)
+                    if (!l.trim().isEmpty())
+                        all.add(l.trim());
+            } finally {
+                r.close();
+            }
+        } catch (IOException ex) {
+            // no previous file
+        } catch (IllegalArgumentException ex) {
+            // no previous file
+        }
+        all.addAll(binders);
+        try {
+            FileObject f = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", SERVICES);
+            Writer w = f.openWriter();
+            try {
+                for (String s : all)
+                    w.write(s + "\n");
+            } finally {
+                w.close();
+            }
+        } catch (IOException ex) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unable to write " + SERVICES + ": " + ex);
+        }
+    }
+
+}
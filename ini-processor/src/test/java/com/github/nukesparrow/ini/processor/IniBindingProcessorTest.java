@@ -0,0 +1,200 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini.processor;
+
+import com.github.nukesparrow.ini.Ini;
+import com.github.nukesparrow.ini.IniBinder;
+import com.github.nukesparrow.ini.IniDefaults;
+import com.github.nukesparrow.ini.IniUtil;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import org.junit.Test;
+
+/**
+ * Compiles sample sources with the processor and uses generated binders
+ *
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+public class IniBindingProcessorTest {
+
+    private static final String POOL =
+            "package sample;\n"
+            + "import com.github.nukesparrow.ini.*;\n"
+            + "@IniBinding\n"
+            + "public class Pool {\n"
+            + "    public int size;\n"
+            + "    @IniKeyName(\"name\") public String label;\n"
+            + "    public java.util.concurrent.TimeUnit unit;\n"
+            + "    public Long timeout;\n"
+            + "    public java.io.File file;\n"
+            + "    public final int fixed = 1;\n"
+            + "    private boolean enabled;\n"
+            + "    public void setEnabled(boolean enabled) { this.enabled = enabled; }\n"
+            + "    public boolean isEnabled() { return enabled; }\n"
+            + "    public void setFailing(String value) { throw new IllegalStateException(value); }\n"
+            + "}\n";
+
+    private static final String DB =
+            "package sample;\n"
+            + "import com.github.nukesparrow.ini.*;\n"
+            + "@IniBinding\n"
+            + "public interface Db {\n"
+            + "    String host();\n"
+            + "    @IniDefault(\"10\") int getPoolSize();\n"
+            + "    boolean isDebug();\n"
+            + "    @IniKeyName(\"ratio\") @IniDefault(\"0.5\") double loadFactor();\n"
+            + "}\n";
+
+    private static void write(File f, String text) throws Exception {
+        f.getParentFile().mkdirs();
+        Writer w = new OutputStreamWriter(new FileOutputStream(f), "UTF-8");
+        w.write(text);
+        w.close();
+    }
+
+    private static void delete(File f) {
+        File[] l = f.listFiles();
+        if (l != null)
+            for (File c : l)
+                delete(c);
+        f.delete();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testGeneratedBinders() throws Exception {
+        File dir = File.createTempFile("processor", "");
+        dir.delete();
+        try {
+            File src = new File(dir, "src/sample");
+            File out = new File(dir, "classes");
+            out.mkdirs();
+            write(new File(src, "Pool.java"), POOL);
+            write(new File(src, "Db.java"), DB);
+
+            JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+            int r = javac.run(null, null, null, "-d", out.getPath(),
+                    "-classpath", System.getProperty("java.class.path"),
+                    "-processor", IniBindingProcessor.class.getName(),
+                    new File(src, "Pool.java").getPath(), new File(src, "Db.java").getPath());
+            assert r == 0;
+            assert new File(out, "sample/PoolIniBinder.class").exists();
+            assert new File(out, "sample/DbIniImpl.class").exists();
+
+            URLClassLoader loader = new URLClassLoader(new URL[] {out.toURI().toURL()}, getClass().getClassLoader());
+            Class pool = loader.loadClass("sample.Pool");
+            Class db = loader.loadClass("sample.Db");
+            IniBinder poolBinder = IniUtil.binder(pool);
+            assert poolBinder != null && poolBinder.getClass().getName().equals("sample.PoolIniBinder");
+
+            Ini ini = new Ini();
+            Ini.Section s = ini.section("pool", true);
+            s.set("size", 8);
+            s.set("name", "main");
+            s.set("unit", "SECONDS");
+            s.set("timeout", 30);
+            s.set("file", "a.txt");
+            s.set("enabled", true);
+            Object p = IniUtil.loadPOJO(s, pool.newInstance());
+            assert pool.getField("size").get(p).equals(8);
+            assert pool.getField("label").get(p).equals("main");
+            assert pool.getField("unit").get(p) == java.util.concurrent.TimeUnit.SECONDS;
+            assert pool.getField("timeout").get(p).equals(30L);
+            assert pool.getField("file").get(p).equals(new File("a.txt"));
+            assert pool.getMethod("isEnabled").invoke(p).equals(true);
+
+            s.set("fixed", 2);
+            try {
+                IniUtil.loadPOJO(s, pool.newInstance());
+                assert false;
+            } catch (RuntimeException ex) {
+                assert ex.getCause() instanceof IllegalAccessException;
+            }
+
+            s = ini.section("failing", true);
+            s.set("failing", "boom");
+            try {
+                IniUtil.loadPOJO(s, pool.newInstance());
+                assert false;
+            } catch (RuntimeException ex) {
+                assert ex.getCause().getCause() instanceof IllegalStateException; // as reflective loadPOJO
+            }
+
+            Ini.Section d = ini.section("db", true);
+            d.set("host", "localhost");
+            Object config = IniUtil.create(d, db);
+            assert db.getMethod("host").invoke(config).equals("localhost");
+            assert db.getMethod("getPoolSize").invoke(config).equals(10);
+            assert db.getMethod("isDebug").invoke(config).equals(false);
+            assert db.getMethod("loadFactor").invoke(config).equals(0.5);
+
+            d.set("poolSize", 20);
+            d.set("debug", true);
+            d.set("ratio", 0.75);
+            assert db.getMethod("getPoolSize").invoke(config).equals(20);
+            assert db.getMethod("isDebug").invoke(config).equals(true);
+            assert db.getMethod("loadFactor").invoke(config).equals(0.75);
+            d.remove("host");
+            assert db.getMethod("host").invoke(config) == null;
+
+            ini.removeSection("db");
+            assert db.getMethod("getPoolSize").invoke(config).equals(10);
+            ini.section("db", true).set("poolSize", 30);
+            assert db.getMethod("getPoolSize").invoke(config).equals(30);
+
+            Ini.Section defaults = new Ini().section("defaults", true);
+            defaults.set("poolSize", 1);
+            Object unversioned = IniUtil.create(new IniDefaults(null, defaults), db);
+            assert db.getMethod("getPoolSize").invoke(unversioned).equals(1);
+            defaults.set("poolSize", 2);
+            assert db.getMethod("getPoolSize").invoke(unversioned).equals(2);
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testErrors() throws Exception {
+        File dir = File.createTempFile("processor", "");
+        dir.delete();
+        try {
+            File src = new File(dir, "src/sample/Bad.java");
+            File out = new File(dir, "classes");
+            out.mkdirs();
+            write(src, "package sample;\n"
+                    + "@com.github.nukesparrow.ini.IniBinding\n"
+                    + "public interface Bad {\n"
+                    + "    void set(String value);\n"
+                    + "}\n");
+            int r = ToolProvider.getSystemJavaCompiler().run(null, null, null, "-d", out.getPath(),
+                    "-classpath", System.getProperty("java.class.path"),
+                    "-processor", IniBindingProcessor.class.getName(),
+                    src.getPath());
+            assert r != 0;
+            assert Arrays.asList(out.list()).isEmpty() || !new File(out, "sample/BadIniImpl.class").exists();
+        } finally {
+            delete(dir);
+        }
+    }
+
+}
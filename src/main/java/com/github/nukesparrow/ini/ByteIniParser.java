@@ -0,0 +1,232 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Parser, which scans encoded bytes directly instead of reading lines as
+ * strings. Strings are created only for final section names, keys, values and
+ * comments. ASCII tokens are decoded and unescaped in place, other tokens are
+ * decoded with parser charset, which must be ASCII compatible (UTF-8 by
+ * default).
+ *
+ * Produces exactly the same {@link Ini} as {@link StringIniParser} for the
+ * same text.
+ *
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+public class ByteIniParser extends StringIniParser {
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+
+    private final Charset charset;
+
+    private byte[] line = new byte[256];
+    private char[] chars = new char[256];
+
+    private boolean lazyValues = false;
+    private LazyValues values = null;
+
+    public ByteIniParser(Ini ini) {
+        this(ini, UTF8);
+    }
+
+    public ByteIniParser(Ini ini, Charset charset) {
+        super(ini);
+        if (charset == null)
+            throw new NullPointerException();
+        this.charset = charset;
+    }
+
+    ByteIniParser(Charset charset) {
+        if (charset == null)
+            throw new NullPointerException();
+        this.charset = charset;
+    }
+
+    public boolean isLazyValues() {
+        return lazyValues;
+    }
+
+    /**
+     * In lazy mode values are not decoded while parsing, entries keep
+     * reference to parsed array and unescape value on first access. This
+     * works for heap buffers and arrays only, and parsed data is retained
+     * until all values are decoded, so it suits readers, which access small
+     * part of large file.
+     */
+    public void setLazyValues(boolean lazyValues) {
+        this.lazyValues = lazyValues;
+    }
+
+    /**
+     * Parses remaining bytes of buffer, buffer position is moved to its limit
+     */
+    public void parse(ByteBuffer b) {
+        if (b.hasArray()) {
+            parse(b.array(), b.arrayOffset() + b.position(), b.remaining());
+            b.position(b.limit());
+            return;
+        }
+
+        // direct or mapped buffer, lines are copied one by one
+        while (b.hasRemaining()) {
+            int n = 0;
+            byte c = 0;
+            while (b.hasRemaining()) {
+                c = b.get();
+                if (c == '\n' || c == '\r')
+                    break;
+                if (n == line.length) {
+                    byte[] g = new byte[n * 2];
+                    System.arraycopy(line, 0, g, 0, n);
+                    line = g;
+                }
+                line[n++] = c;
+            }
+            parseLine(line, 0, n);
+            if (c == '\r' && b.hasRemaining() && b.get(b.position()) == '\n')
+                b.get();
+        }
+        finish();
+    }
+
+    public void parse(byte[] b, int offset, int length) {
+        if (lazyValues && (values == null || values.data != b))
+            values = new LazyValues(b, charset);
+        int end = offset + length;
+        int p = offset;
+        while (p < end) {
+            int s = p;
+            while (p < end && b[p] != '\n' && b[p] != '\r')
+                p++;
+            parseLine(b, s, p);
+            if (p < end) {
+                if (b[p] == '\r' && p + 1 < end && b[p + 1] == '\n')
+                    p += 2;
+                else
+                    p++;
+            }
+        }
+        finish();
+    }
+
+    /**
+     * Parses single line without terminator, same as
+     * {@link StringIniParser#parseLine(java.lang.String)}
+     */
+    public void parseLine(byte[] b, int s, int e) {
+        while (s < e && (b[s] & 0xFF) <= ' ')
+            s++;
+        while (e > s && (b[e - 1] & 0xFF) <= ' ')
+            e--;
+
+        if (s == e) {
+            blankLine();
+            return;
+        }
+
+        if (b[s] == '#') {
+            comment(decode(b, s + 1, e, charset, false));
+            return;
+        }
+
+        if (b[s] == '[') {
+            int i = indexOf(b, s + 1, e, ']');
+            sectionStart(token(b, s + 1, i == -1 ? e : i));
+            return;
+        }
+
+        int i = indexOf(b, s, e, '=');
+        if (i == -1) {
+            unnamedItem(token(b, s, e));
+        } else {
+            String key = token(b, s, i);
+            if (values != null && values.data == b) {
+                int vs = i + 1;
+                while (vs < e && (b[vs] & 0xFF) <= ' ')
+                    vs++;
+                entry(key, values, vs, e - vs);
+            } else {
+                entry(key, token(b, i + 1, e));
+            }
+        }
+    }
+
+    private static int indexOf(byte[] b, int s, int e, char c) {
+        for (int i = s; i < e; i++)
+            if (b[i] == c)
+                return i;
+        return -1;
+    }
+
+    static String decode(byte[] b, int s, int e, Charset charset, boolean unescape) {
+        for (int i = s; i < e; i++)
+            if (b[i] < 0)
+                return unescape ? IniStringUtil.unescape(new String(b, s, e - s, charset)) : new String(b, s, e - s, charset);
+        return unescape ? IniStringUtil.unescape(new String(b, s, e - s, LATIN1)) : new String(b, s, e - s, LATIN1);
+    }
+
+    /**
+     * Trims and unescapes key, value or section name
+     */
+    private String token(byte[] b, int s, int e) {
+        while (s < e && (b[s] & 0xFF) <= ' ')
+            s++;
+        while (e > s && (b[e - 1] & 0xFF) <= ' ')
+            e--;
+
+        boolean escaped = false;
+        for (int i = s; i < e; i++) {
+            byte c = b[i];
+            if (c < 0)
+                return IniStringUtil.unescape(new String(b, s, e - s, charset));
+            if (c == '%' || c == '+')
+                escaped = true;
+        }
+        if (!escaped)
+            return new String(b, s, e - s, LATIN1);
+
+        if (chars.length < e - s)
+            chars = new char[Math.max(e - s, chars.length * 2)];
+        int n = 0;
+        int i = s;
+        while (i < e) {
+            char c = (char) b[i];
+            if (c == '+') {
+                chars[n++] = ' ';
+                i++;
+            } else if (c == '%' && e - i >= 3) {
+                int v = IniStringUtil.unhex((char) b[i + 1], (char) b[i + 2]);
+                if (v == IniStringUtil.BAD_ESCAPE) {
+                    chars[n++] = c;
+                    i++;
+                } else {
+                    chars[n++] = (char) v;
+                    i += 3;
+                }
+            } else {
+                chars[n++] = c;
+                i++;
+            }
+        }
+        return new String(chars, 0, n);
+    }
+
+}
@@ -0,0 +1,624 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link Ini}, which may be read and modified by many threads at once.
+ *
+ * Reads never lock: sections and entries are found in concurrent hash maps,
+ * {@link #sections()} and {@link Section#properties()} return immutable
+ * views of insertion ordered arrays, which are published by volatile write.
+ * Modifications of section are serialized by monitor of section, so threads
+ * updating different sections don't contend. Sections are created and
+ * removed under single lock.
+ *
+ * Each read sees consistent state of single entry, but several reads are
+ * not atomic: list returned by {@link Section#properties()} doesn't reflect
+ * changes made after it has been returned, and value read after it may be
+ * newer. {@link #snapshot()} takes consistent state of each section, but
+ * not of whole Ini, while sections are modified.
+ *
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+public class ConcurrentIni extends Ini {
+
+    /**
+     * Sections by name, top level section is stored under empty name
+     */
+    private final ConcurrentHashMap<String, ConcurrentSection> sectionMap = new ConcurrentHashMap<String, ConcurrentSection>();
+    private volatile Order<ConcurrentSection> sectionOrder = Order.empty();
+
+    private final AtomicInteger version = new AtomicInteger();
+    private volatile int storedVersion = -1;
+
+    public ConcurrentIni() {
+    }
+
+    /**
+     * Creates copy of source
+     */
+    public ConcurrentIni(Ini source) {
+        copyFrom(source, true);
+        clearModified();
+    }
+
+    @Override
+    protected void modified() {
+        version.incrementAndGet();
+    }
+
+    @Override
+    public void clearModified() {
+        storedVersion = version.get();
+    }
+
+    @Override
+    public boolean isModified() {
+        return version.get() != storedVersion;
+    }
+
+    @Override
+    public int getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Transactions are serialized with each other and with creation and
+     * removal of sections. Lock free readers may see transaction partially
+     * applied.
+     */
+    @Override
+    void apply(IniTransaction tx) {
+        synchronized (sectionMap) {
+            super.apply(tx);
+        }
+    }
+
+    private static String key(String sectionName) {
+        return sectionName == null ? "" : sectionName;
+    }
+
+    @Override
+    public List<Section> sections() {
+        return sectionOrder.<Section>list();
+    }
+
+    @Override
+    public Section section(String sectionName, boolean allocateIfNecessary, boolean lazy) {
+        if ("".equals(sectionName) || "null".equals(sectionName))
+            sectionName = null;
+
+        ConcurrentSection s = sectionMap.get(key(sectionName));
+        if (s != null)
+            return s;
+        if (allocateIfNecessary) {
+            synchronized (sectionMap) {
+                s = sectionMap.get(key(sectionName));
+                if (s != null)
+                    return s;
+                String name = pooled(sectionName);
+                s = new ConcurrentSection(name);
+                sectionMap.put(key(name), s);
+                sectionOrder = sectionOrder.append(s);
+            }
+            changed();
+            return s;
+        } else {
+            return lazy ? new LazilyInitializedSection(sectionName) : null;
+        }
+    }
+
+    @Override
+    public void removeSection(String sectionName) {
+        if ("".equals(sectionName) || "null".equals(sectionName))
+            sectionName = null;
+        synchronized (sectionMap) {
+            ConcurrentSection s = sectionMap.remove(key(sectionName));
+            if (s != null)
+                sectionOrder = sectionOrder.remove(s);
+        }
+        changed();
+    }
+
+    @Override
+    public void clear() {
+        synchronized (sectionMap) {
+            sectionMap.clear();
+            sectionOrder = Order.empty();
+        }
+        changed();
+    }
+
+    public class ConcurrentSection extends AbstractSection {
+
+        private final String name;
+        private final ConcurrentHashMap<String, ConcurrentEntry> entries = new ConcurrentHashMap<String, ConcurrentEntry>();
+        private volatile Order<ConcurrentEntry> order = Order.empty();
+        private volatile String comment = null;
+        /**
+         * Changed only while section is locked
+         */
+        private volatile int version = 0;
+
+        ConcurrentSection(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Called while section is locked, change listeners are run by
+         * {@link #changedSince(int)} after lock is released
+         */
+        private void modified() {
+            version++;
+            ConcurrentIni.this.changedWithoutListeners();
+        }
+
+        /**
+         * Runs change listeners of Ini if section has changed since version
+         * v, unless this thread still holds lock of section, so listeners
+         * never run under it
+         */
+        private void changedSince(int v) {
+            if (version != v && !Thread.holdsLock(this))
+                ConcurrentIni.this.fireChanged();
+        }
+
+        public int getVersion() {
+            return version;
+        }
+
+        @Override
+        synchronized IniSnapshot.SectionSnapshot snapshot() {
+            return super.snapshot();
+        }
+
+        public class ConcurrentEntry implements SectionEntry {
+
+            private final String name;
+            private volatile String value;
+            private volatile String comment;
+            private volatile Typed typed = null;
+
+            ConcurrentEntry(String name, String value, String comment) {
+                if (value == null)
+                    throw new NullPointerException();
+                this.name = name;
+                this.value = value;
+                this.comment = comment;
+            }
+
+            public Section getSection() {
+                return ConcurrentSection.this;
+            }
+
+            public String getName() {
+                return name;
+            }
+
+            public String getValue() {
+                return value;
+            }
+
+            public void setValue(String value) {
+                if (value == null)
+                    throw new NullPointerException();
+                int before = version;
+                synchronized (ConcurrentSection.this) {
+                    if (value.equals(this.value))
+                        return;
+                    this.value = value;
+                    ConcurrentSection.this.modified();
+                }
+                changedSince(before);
+            }
+
+            public String getComment() {
+                return comment;
+            }
+
+            public void setComment(String comment) {
+                int before = version;
+                synchronized (ConcurrentSection.this) {
+                    if (comment == null ? this.comment == null : comment.equals(this.comment))
+                        return;
+                    this.comment = comment;
+                    ConcurrentSection.this.modified();
+                }
+                changedSince(before);
+            }
+
+            public boolean isUnnamed() {
+                int n = elementNumber(name);
+                if (n == 0)
+                    return "count".equals(name);
+                return n <= unnamedCount();
+            }
+
+            /**
+             * @return primitive decoded from value v, if it is cached
+             */
+            private Object typed(Class<?> type, String v) {
+                Typed t = typed;
+                return t != null && t.source == v && t.value.getClass() == type ? t.value : null;
+            }
+
+            private <T> T typed(String v, T decoded) {
+                typed = new Typed(v, decoded);
+                return decoded;
+            }
+
+            byte byteValue(byte def) {
+                String v = value;
+                Object t = typed(Byte.class, v);
+                if (t != null)
+                    return (Byte) t;
+                return v.isEmpty() ? def : typed(v, Byte.valueOf(v));
+            }
+
+            short shortValue(short def) {
+                String v = value;
+                Object t = typed(Short.class, v);
+                if (t != null)
+                    return (Short) t;
+                return v.isEmpty() ? def : typed(v, Short.valueOf(v));
+            }
+
+            int intValue(int def) {
+                String v = value;
+                Object t = typed(Integer.class, v);
+                if (t != null)
+                    return (Integer) t;
+                return v.isEmpty() ? def : typed(v, Integer.valueOf(v));
+            }
+
+            long longValue(long def) {
+                String v = value;
+                Object t = typed(Long.class, v);
+                if (t != null)
+                    return (Long) t;
+                return v.isEmpty() ? def : typed(v, Long.valueOf(v));
+            }
+
+            float floatValue(float def) {
+                String v = value;
+                Object t = typed(Float.class, v);
+                if (t != null)
+                    return (Float) t;
+                return v.isEmpty() ? def : typed(v, Float.valueOf(v));
+            }
+
+            double doubleValue(double def) {
+                String v = value;
+                Object t = typed(Double.class, v);
+                if (t != null)
+                    return (Double) t;
+                return v.isEmpty() ? def : typed(v, Double.valueOf(v));
+            }
+
+            @Override
+            public String toString() {
+                return value;
+            }
+
+        }
+
+        public String get(String key, String def) {
+            ConcurrentEntry e = entries.get(key);
+            return e == null ? def : e.value;
+        }
+
+        public byte get(String key, byte def) {
+            ConcurrentEntry e = entries.get(key);
+            return e == null ? def : e.byteValue(def);
+        }
+
+        public short get(String key, short def) {
+            ConcurrentEntry e = entries.get(key);
+            return e == null ? def : e.shortValue(def);
+        }
+
+        public int get(String key, int def) {
+            ConcurrentEntry e = entries.get(key);
+            return e == null ? def : e.intValue(def);
+        }
+
+        public long get(String key, long def) {
+            ConcurrentEntry e = entries.get(key);
+            return e == null ? def : e.longValue(def);
+        }
+
+        public boolean get(String key, boolean def) {
+            ConcurrentEntry e = entries.get(key);
+            if (e == null)
+                return def;
+            String v = e.value;
+            return v.isEmpty() ? def : Boolean.parseBoolean(v);
+        }
+
+        public float get(String key, float def) {
+            ConcurrentEntry e = entries.get(key);
+            return e == null ? def : e.floatValue(def);
+        }
+
+        public double get(String key, double def) {
+            ConcurrentEntry e = entries.get(key);
+            return e == null ? def : e.doubleValue(def);
+        }
+
+        public Date get(String key, Date def) {
+            ConcurrentEntry e = entries.get(key);
+            String v = e == null ? null : e.value;
+            return v == null || v.isEmpty() ? def : new Date(v);
+        }
+
+        public boolean isSet(String key) {
+            return entries.containsKey(key);
+        }
+
+        public String get(String key) {
+            ConcurrentEntry e = entries.get(key);
+            return e == null ? null : e.value;
+        }
+
+        public void set(String key, Object value) {
+            String v = pooled(String.valueOf(value));
+            int before = version;
+            synchronized (this) {
+                ConcurrentEntry e = entries.get(key);
+                if (e == null)
+                    put(new ConcurrentEntry(pooled(key), v, null));
+                else if (!v.equals(e.value))
+                    e.value = v;
+                else
+                    return;
+                modified();
+            }
+            changedSince(before);
+        }
+
+        public void set(String key, Object value, String comment) {
+            String v = pooled(String.valueOf(value));
+            int before = version;
+            synchronized (this) {
+                ConcurrentEntry e = entries.get(key);
+                if (e == null) {
+                    put(new ConcurrentEntry(pooled(key), v, comment));
+                } else {
+                    boolean changed = false;
+                    if (!v.equals(e.value)) {
+                        e.value = v;
+                        changed = true;
+                    }
+                    if (comment == null ? e.comment != null : !comment.equals(e.comment)) {
+                        e.comment = comment;
+                        changed = true;
+                    }
+                    if (!changed)
+                        return;
+                }
+                modified();
+            }
+            changedSince(before);
+        }
+
+        /**
+         * Called while section is locked
+         */
+        private void put(ConcurrentEntry e) {
+            order = order.append(e);
+            entries.put(e.name, e);
+        }
+
+        /**
+         * Sets "count" and element at once, so readers never see count of
+         * missing element. "count" entry precedes the first element, as in
+         * {@link IniSection}.
+         */
+        @Override
+        void addUnnamed(String value) {
+            String v = pooled(String.valueOf(value));
+            int before = version;
+            synchronized (this) {
+                ConcurrentEntry count = entries.get("count");
+                if (count == null)
+                    put(count = new ConcurrentEntry("count", "0", null));
+                String index = pooled(Integer.toString(count.intValue(0) + 1));
+                ConcurrentEntry e = entries.get(index);
+                if (e == null)
+                    put(new ConcurrentEntry(index, v, null));
+                else
+                    e.value = v;
+                count.value = index;
+                modified();
+            }
+            changedSince(before);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getComment(String key) {
+            ConcurrentEntry e = entries.get(key);
+            return e == null ? null : e.comment;
+        }
+
+        public void setComment(String key, String comment) {
+            ConcurrentEntry e = entries.get(key);
+            if (e == null) {
+                throw new IllegalArgumentException("Field " + key + " not found");
+            } else
+                e.setComment(comment);
+        }
+
+        public String getComment() {
+            return comment;
+        }
+
+        public void setComment(String comment) {
+            int before = version;
+            synchronized (this) {
+                if (this.comment == null ? comment == null : this.comment.equals(comment))
+                    return;
+                this.comment = comment;
+                modified();
+            }
+            changedSince(before);
+        }
+
+        public void remove(String key) {
+            int before = version;
+            synchronized (this) {
+                ConcurrentEntry e = entries.remove(key);
+                if (e != null)
+                    order = order.remove(e);
+                modified();
+            }
+            changedSince(before);
+        }
+
+        public List<SectionEntry> properties() {
+            return order.<SectionEntry>list();
+        }
+
+        public SectionEntry getUnnamed(int index) {
+            return entries.get(Integer.toString(index + 1));
+        }
+
+        private int unnamedCount() {
+            try {
+                return get("count", 0);
+            } catch (NumberFormatException ex) {
+                return 0;
+            }
+        }
+
+        public int[] unnamedInts() {
+            int[] r = new int[Math.max(unnamedCount(), 0)];
+            for (int i = 0; i < r.length; i++) {
+                ConcurrentEntry e = (ConcurrentEntry) getUnnamed(i);
+                if (e != null)
+                    r[i] = e.intValue(0);
+            }
+            return r;
+        }
+
+        public long[] unnamedLongs() {
+            long[] r = new long[Math.max(unnamedCount(), 0)];
+            for (int i = 0; i < r.length; i++) {
+                ConcurrentEntry e = (ConcurrentEntry) getUnnamed(i);
+                if (e != null)
+                    r[i] = e.longValue(0);
+            }
+            return r;
+        }
+
+        public void setUnnamedComment(String comment) {
+            int before = version;
+            synchronized (this) {
+                if (!isSet("count"))
+                    set("count", "0", comment);
+                else
+                    setComment("count", comment);
+            }
+            changedSince(before);
+        }
+
+        public String getUnnamedComment() {
+            return getComment("count");
+        }
+
+        public void setUnnamed(String[] elems) {
+            int before = version;
+            synchronized (this) {
+                String savedComment = getUnnamedComment();
+                unnamedList().clear();
+                unnamedList().addAll(Arrays.asList(elems));
+                setUnnamedComment(savedComment);
+            }
+            changedSince(before);
+        }
+
+        @Override
+        public String toString() {
+            return properties().toString();
+        }
+
+    }
+
+    /**
+     * Items in insertion order. Fields are final, so instance is safe to
+     * read without locking. Append fills spare slot of the same array, which
+     * is beyond size of every published instance, and returns new instance.
+     */
+    private static final class Order<T> {
+
+        private static final Order<Object> EMPTY = new Order<Object>(new Object[0], 0);
+
+        final Object[] items;
+        final int size;
+
+        Order(Object[] items, int size) {
+            this.items = items;
+            this.size = size;
+        }
+
+        /**
+         * EMPTY holds no items, so it is an order of any type
+         */
+        @SuppressWarnings("unchecked")
+        static <T> Order<T> empty() {
+            return (Order<T>) EMPTY;
+        }
+
+        Order<T> append(T item) {
+            Object[] a = items;
+            if (size == a.length)
+                a = Arrays.copyOf(a, Math.max(8, size * 2));
+            a[size] = item;
+            return new Order<T>(a, size + 1);
+        }
+
+        Order<T> remove(T item) {
+            for (int i = 0; i < size; i++) {
+                if (items[i] == item) {
+                    Object[] a = new Object[Math.max(8, size)];
+                    System.arraycopy(items, 0, a, 0, i);
+                    System.arraycopy(items, i + 1, a, i, size - i - 1);
+                    return new Order<T>(a, size - 1);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * @param <E> supertype of T, items are all of type T
+         */
+        @SuppressWarnings("unchecked")
+        <E> List<E> list() {
+            return (List<E>) (List<?>) Collections.unmodifiableList(Arrays.asList(items).subList(0, size));
+        }
+
+    }
+
+}
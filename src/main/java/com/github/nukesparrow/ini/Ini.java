@@ -26,15 +26,138 @@ public class Ini implements IniProperties {
     private LinkedHashMap<String, Section> sections = new LinkedHashMap<String, Section>();
 
     /**
-     * Modifications counter used to check if stored .ini update is necessary
+     * Modifications counter used to check if stored .ini update is necessary,
+     * and by {@link IniKey} to check if cached value is current
      */
-    private int version = 0;
+    private volatile int version = 0;
     private int storedVersion = -1;
 
     protected void modified() {
         version++;
     }
 
+    /**
+     * Thread, which applies transaction, and whether it has changed
+     * anything. Other threads never see their own Thread here, so field
+     * needs no synchronization.
+     */
+    private Thread committer = null;
+    private boolean changedInTransaction = false;
+
+    /**
+     * Called on every change, calls {@link #modified()} unless transaction
+     * is being applied, which calls it once
+     */
+    final void changed() {
+        changedWithoutListeners();
+        fireChanged();
+    }
+
+    /**
+     * Same as {@link #changed()}, but change listeners are not run, caller
+     * runs them by {@link #fireChanged()} once it has released its locks
+     */
+    final void changedWithoutListeners() {
+        if (committer == Thread.currentThread())
+            changedInTransaction = true;
+        else
+            modified();
+    }
+
+    /**
+     * Run on thread, which has changed Ini, after every change, or once
+     * after transaction, while no lock of Ini is held by that thread
+     */
+    private volatile Runnable[] changeListeners = null;
+
+    synchronized void addChangeListener(Runnable l) {
+        Runnable[] a = changeListeners;
+        Runnable[] n = a == null ? new Runnable[1] : Arrays.copyOf(a, a.length + 1);
+        n[n.length - 1] = l;
+        changeListeners = n;
+    }
+
+    synchronized void removeChangeListener(Runnable l) {
+        Runnable[] a = changeListeners;
+        if (a == null)
+            return;
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] == l) {
+                Runnable[] n = null;
+                if (a.length > 1) {
+                    n = new Runnable[a.length - 1];
+                    System.arraycopy(a, 0, n, 0, i);
+                    System.arraycopy(a, i + 1, n, i, n.length - i);
+                }
+                changeListeners = n;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Does nothing while transaction is being applied, listeners are run
+     * once after it
+     */
+    final void fireChanged() {
+        if (committer == Thread.currentThread())
+            return;
+        Runnable[] a = changeListeners;
+        if (a != null)
+            for (Runnable l : a)
+                l.run();
+    }
+
+    /**
+     * @return new transaction, which buffers changes until
+     * {@link IniTransaction#commit()}
+     */
+    public IniTransaction begin() {
+        return new IniTransaction(this);
+    }
+
+    /**
+     * Runs callback with new transaction, and commits it if callback
+     * returns normally, or rolls it back if callback throws.
+     * <p>
+     * Commit itself is not atomic: if applying changes fails, e.g. by
+     * exception of hook of subclass, changes applied so far are kept, and
+     * are reported as single change.
+     */
+    public void transaction(IniTransaction.Callback callback) {
+        IniTransaction tx = begin();
+        boolean done = false;
+        try {
+            callback.run(tx);
+            done = true;
+        } finally {
+            if (done)
+                tx.commit();
+            else
+                tx.rollback();
+        }
+    }
+
+    /**
+     * Applies changes of transaction, {@link #modified()} is called once
+     * if anything has been changed, also if applying fails midway, which
+     * leaves changes applied so far. Change listeners are run by caller,
+     * once locks of overriding methods are released.
+     */
+    void apply(IniTransaction tx) {
+        Thread previous = committer;
+        committer = Thread.currentThread();
+        try {
+            tx.applyTo(this);
+        } finally {
+            committer = previous;
+            if (previous == null && changedInTransaction) {
+                changedInTransaction = false;
+                modified();
+            }
+        }
+    }
+
     public void clearModified() {
         storedVersion = version;
     }
@@ -47,6 +170,47 @@ public class Ini implements IniProperties {
         return version;
     }
 
+    private volatile StringPool stringPool = null;
+
+    public StringPool getStringPool() {
+        return stringPool;
+    }
+
+    /**
+     * Sets pool, which canonicalizes section names, keys and values set
+     * after this call, including ones set by parsers
+     * @param stringPool pool, possibly shared with other instances, or null
+     */
+    public void setStringPool(StringPool stringPool) {
+        this.stringPool = stringPool;
+    }
+
+    String pooled(String s) {
+        StringPool p = stringPool;
+        return p == null ? s : p.canonicalize(s);
+    }
+
+    private volatile IniSnapshot snapshot = null;
+
+    /**
+     * Takes immutable snapshot of current state. Snapshot shares sections,
+     * which have not been changed, with previous snapshot, and previous
+     * snapshot itself is returned if nothing has been changed since.
+     * Snapshot is labeled by version, which has been current when snapshot
+     * has been started.
+     */
+    public IniSnapshot snapshot() {
+        int v = getVersion();
+        IniSnapshot last = snapshot;
+        if (last != null && last.getVersion() == v)
+            return last;
+        List<Section> l = sections();
+        IniSnapshot.SectionSnapshot[] a = new IniSnapshot.SectionSnapshot[l.size()];
+        for (int i = 0; i < a.length; i++)
+            a[i] = ((AbstractSection) l.get(i)).snapshot();
+        return snapshot = new IniSnapshot(v, a);
+    }
+
     public Section section(String sectionName) {
         return section(sectionName, false, true);
     }
@@ -67,10 +231,12 @@ public class Ini implements IniProperties {
         if (s != null)
             return s;
         if (allocateIfNecessary) {
-            s = new IniSection(sectionName);
-            sections.put(sectionName, s);
-            modified();
-            return s;
+            String name = pooled(sectionName);
+            IniSection n = new IniSection(name);
+            sections.put(name, n);
+            sectionChanged(n);
+            changed();
+            return n;
         } else {
             return lazy ? new LazilyInitializedSection(sectionName) : null;
         }
@@ -78,12 +244,36 @@ public class Ini implements IniProperties {
 
     public void removeSection(String s) {
         sections.remove(s);
-        modified();
+        changedInBulk();
+        changed();
     }
 
     public void clear() {
         sections.clear();
-        modified();
+        changedInBulk();
+        changed();
+    }
+
+    /*
+     * Change hooks for subclasses, which persist individual changes. They are
+     * invoked after change is made and before modified(). Changes, which are
+     * not reported by entryChanged() or sectionChanged(), are reported by
+     * changedInBulk().
+     */
+
+    /**
+     * Entry has been added, removed, or its value or comment has been changed
+     */
+    void entryChanged(IniSection section, String key) {
+    }
+
+    /**
+     * Section has been created or its comment has been changed
+     */
+    void sectionChanged(IniSection section) {
+    }
+
+    void changedInBulk() {
     }
 
     public String get(String key, String def) {
@@ -173,11 +363,38 @@ public class Ini implements IniProperties {
         public void setUnnamedComment(String comment);
         public String getUnnamedComment();
         public void setUnnamed(String[] elems);
+        /**
+         * @return unnamed list elements decoded as int, missing and empty
+         * elements are 0
+         * @throws NumberFormatException if some element is not a number
+         */
+        public int[] unnamedInts();
+        /**
+         * @see #unnamedInts()
+         */
+        public long[] unnamedLongs();
 
     }
     
-    private abstract class AbstractSection implements Section {
+    abstract class AbstractSection implements Section {
         private List<String> unnamedList = null;
+        private volatile IniSnapshot.SectionSnapshot snapshot = null;
+
+        Ini ini() {
+            return Ini.this;
+        }
+
+        /**
+         * @return snapshot of section, the previous one if section has not
+         * been changed since
+         */
+        IniSnapshot.SectionSnapshot snapshot() {
+            IniSnapshot.SectionSnapshot s = snapshot;
+            int v = getVersion();
+            if (s != null && s.getVersion() == v)
+                return s;
+            return snapshot = IniSnapshot.snapshot(this, v, s);
+        }
 
         public List<String> unnamedList() {
 
@@ -185,9 +402,7 @@ public class Ini implements IniProperties {
 
                 @Override
                 public boolean add(String e) {
-                    String nc = Integer.toString(size() + 1);
-                    AbstractSection.this.set("count", nc);
-                    AbstractSection.this.set(nc, e);
+                    addUnnamed(e);
                     return true;
                 }
 
@@ -223,6 +438,12 @@ public class Ini implements IniProperties {
             });
 
         }
+
+        void addUnnamed(String value) {
+            String nc = Integer.toString(unnamedList().size() + 1);
+            set("count", nc);
+            set(nc, value);
+        }
     }
 
     public interface SectionEntry {
@@ -247,10 +468,21 @@ public class Ini implements IniProperties {
         private String comment = null;
 
         private int version = 0;
+
+        /**
+         * Entries of unnamed list elements, rebuilt on demand after "count" or
+         * numeric key is changed
+         */
+        private UnnamedIndex unnamed = null;
         
+        private void modified(String key) {
+            Ini.this.entryChanged(this, key);
+            modified();
+        }
+
         private void modified() {
-            Ini.this.modified();
             version++;
+            Ini.this.changed();
         }
         
         public int getVersion() {
@@ -260,13 +492,25 @@ public class Ini implements IniProperties {
         public class IniSectionEntry implements SectionEntry {
 
             private final String name;
-            private String value;
+            /**
+             * Name parsed as unnamed list element number, 0 if it is not
+             */
+            private final int number;
+            /**
+             * String, or {@link LazyValues} with escaped value at
+             * rawOffset, which is decoded on first access
+             */
+            private Object value;
+            private int rawOffset;
+            private int rawLength;
             private String comment;
+            private Typed typed;
 
             public IniSectionEntry(String name, String value) {
                 if (value == null)
                     throw new NullPointerException();
                 this.name = name;
+                this.number = elementNumber(name);
                 this.value = value;
                 this.comment = null;
             }
@@ -277,6 +521,16 @@ public class Ini implements IniProperties {
                 this.value = value;
                 this.comment = comment;
                 this.name = name;
+                this.number = elementNumber(name);
+            }
+
+            IniSectionEntry(String name, LazyValues values, int offset, int length, String comment) {
+                this.name = name;
+                this.number = elementNumber(name);
+                this.value = values;
+                this.rawOffset = offset;
+                this.rawLength = length;
+                this.comment = comment;
             }
 
             public Section getSection() {
@@ -288,16 +542,100 @@ public class Ini implements IniProperties {
             }
 
             public String getValue() {
-                return value;
+                Object v = value;
+                if (v instanceof String)
+                    return (String) v;
+                String s = pooled(((LazyValues) v).decode(rawOffset, rawLength));
+                value = s;
+                return s;
             }
 
             public void setValue(String value) {
+                if (update(value))
+                    modified(name);
+            }
+
+            /**
+             * Sets value without modification notification
+             * @return true if value has been changed
+             */
+            boolean update(String value) {
                 if (value == null)
                     throw new NullPointerException();
-                if (value.equals(this.value))
-                    return;
+                if (value.equals(getValue()))
+                    return false;
                 this.value = value;
-                modified();
+                this.typed = null;
+                if (number == 0 && "count".equals(name))
+                    unnamed = null;
+                return true;
+            }
+
+            /**
+             * @return last successfully decoded primitive, if it is of
+             * requested type and was decoded from current value
+             */
+            private Object typed(Class<?> type, String value) {
+                Typed t = typed;
+                return t != null && t.source == value && t.value.getClass() == type ? t.value : null;
+            }
+
+            private <T> T typed(String value, T decoded) {
+                typed = new Typed(value, decoded);
+                return decoded;
+            }
+
+            byte byteValue(byte def) {
+                String v = getValue();
+                Object t = typed(Byte.class, v);
+                if (t != null)
+                    return (Byte) t;
+                return v.isEmpty() ? def : typed(v, Byte.valueOf(v));
+            }
+
+            short shortValue(short def) {
+                String v = getValue();
+                Object t = typed(Short.class, v);
+                if (t != null)
+                    return (Short) t;
+                return v.isEmpty() ? def : typed(v, Short.valueOf(v));
+            }
+
+            int intValue(int def) {
+                String v = getValue();
+                Object t = typed(Integer.class, v);
+                if (t != null)
+                    return (Integer) t;
+                return v.isEmpty() ? def : typed(v, Integer.valueOf(v));
+            }
+
+            long longValue(long def) {
+                String v = getValue();
+                Object t = typed(Long.class, v);
+                if (t != null)
+                    return (Long) t;
+                return v.isEmpty() ? def : typed(v, Long.valueOf(v));
+            }
+
+            boolean booleanValue(boolean def) {
+                String v = getValue();
+                return v.isEmpty() ? def : Boolean.parseBoolean(v);
+            }
+
+            float floatValue(float def) {
+                String v = getValue();
+                Object t = typed(Float.class, v);
+                if (t != null)
+                    return (Float) t;
+                return v.isEmpty() ? def : typed(v, Float.valueOf(v));
+            }
+
+            double doubleValue(double def) {
+                String v = getValue();
+                Object t = typed(Double.class, v);
+                if (t != null)
+                    return (Double) t;
+                return v.isEmpty() ? def : typed(v, Double.valueOf(v));
             }
 
             public String getComment() {
@@ -305,26 +643,34 @@ public class Ini implements IniProperties {
             }
 
             public void setComment(String comment) {
+                if (updateComment(comment))
+                    modified(name);
+            }
+
+            boolean updateComment(String comment) {
                 if (comment == null ? this.comment == null : comment.equals(this.comment))
-                    return;
+                    return false;
                 this.comment = comment;
-                modified();
+                return true;
             }
 
             public boolean isUnnamed() {
-                if ("count".equals(name))
-                    return true;
-                try {
-                    int i = Integer.parseInt(name);
-                    return i >= 1 && i <= unnamedList().size();
-                } catch (NumberFormatException ex) {
-                    return false;
-                }
+                if (number == 0)
+                    return "count".equals(name);
+                return number <= unnamedCount();
+            }
+
+            /**
+             * @return true if adding or removing this entry may change
+             * unnamed list
+             */
+            private boolean listKey() {
+                return number != 0 || "count".equals(name);
             }
 
             @Override
             public String toString() {
-                return value;
+                return getValue();
             }
 
         }
@@ -336,37 +682,37 @@ public class Ini implements IniProperties {
 
         public byte get(String key, byte def) {
             IniSectionEntry e = entries.get(key);
-            return e == null || e.getValue().isEmpty() ? def : Byte.valueOf(e.getValue());
+            return e == null ? def : e.byteValue(def);
         }
 
         public short get(String key, short def) {
             IniSectionEntry e = entries.get(key);
-            return e == null || e.getValue().isEmpty() ? def : Short.valueOf(e.getValue());
+            return e == null ? def : e.shortValue(def);
         }
 
         public int get(String key, int def) {
             IniSectionEntry e = entries.get(key);
-            return e == null || e.getValue().isEmpty() ? def : Integer.valueOf(e.getValue());
+            return e == null ? def : e.intValue(def);
         }
 
         public long get(String key, long def) {
             IniSectionEntry e = entries.get(key);
-            return e == null || e.getValue().isEmpty() ? def : Long.valueOf(e.getValue());
+            return e == null ? def : e.longValue(def);
         }
 
         public boolean get(String key, boolean def) {
             IniSectionEntry e = entries.get(key);
-            return e == null || e.getValue().isEmpty() ? def : Boolean.valueOf(e.getValue());
+            return e == null ? def : e.booleanValue(def);
         }
 
         public float get(String key, float def) {
             IniSectionEntry e = entries.get(key);
-            return e == null || e.getValue().isEmpty() ? def : Float.valueOf(e.getValue());
+            return e == null ? def : e.floatValue(def);
         }
 
         public double get(String key, double def) {
             IniSectionEntry e = entries.get(key);
-            return e == null || e.getValue().isEmpty() ? def : Double.valueOf(e.getValue());
+            return e == null ? def : e.doubleValue(def);
         }
 
         public Date get(String key, Date def) {
@@ -386,19 +732,104 @@ public class Ini implements IniProperties {
         public void set(String key, Object value) {
             IniSectionEntry e = entries.get(key);
             if (e == null) {
-                entries.put(key, new IniSectionEntry(key, String.valueOf(value)));
-                modified();
+                put(new IniSectionEntry(pooled(key), pooled(String.valueOf(value))));
+                modified(key);
             } else
-                e.setValue(String.valueOf(value));
+                e.setValue(pooled(String.valueOf(value)));
         }
 
         public void set(String key, Object value, String comment) {
             IniSectionEntry e = entries.get(key);
             if (e == null) {
-                entries.put(key, new IniSectionEntry(key, String.valueOf(value), comment));
-                modified();
+                put(new IniSectionEntry(pooled(key), pooled(String.valueOf(value)), comment));
+                modified(key);
+            } else {
+                e.setValue(pooled(String.valueOf(value)));
+                e.setComment(comment);
+            }
+        }
+
+        private void put(IniSectionEntry e) {
+            entries.put(e.name, e);
+            if (e.listKey())
+                unnamed = null;
+        }
+
+        /**
+         * Sets unnamed list element and element count, like
+         * {@code set(index, value, comment); set("count", index)} would do,
+         * but without modification notification.
+         * {@link #unnamedAppended()} should be called after all elements are
+         * appended.
+         * @param comment element comment, null keeps existing comment
+         * @return true if section has been changed
+         */
+        boolean appendUnnamed(int index, String value, String comment) {
+            return appendUnnamed(index, value, comment, false);
+        }
+
+        /**
+         * @param countFirst true to create "count" entry before first
+         * element, like {@link List#add(java.lang.Object)} always did
+         */
+        private boolean appendUnnamed(int index, String value, String comment, boolean countFirst) {
+            UnnamedIndex u = unnamedIndex();
+            String key = pooled(Integer.toString(index));
+            value = pooled(value);
+            boolean changed = false;
+            if (countFirst)
+                changed = updateCount(key);
+            IniSectionEntry e = entries.get(key);
+            if (e == null) {
+                e = new IniSectionEntry(key, value, comment);
+                entries.put(key, e);
+                changed = true;
+            } else {
+                changed |= e.update(value);
+                if (comment != null)
+                    changed |= e.updateComment(comment);
+            }
+            if (!countFirst)
+                changed |= updateCount(key);
+            unnamed = u != null && index == u.size + 1 ? u.append(e) : null;
+            return changed;
+        }
+
+        private boolean updateCount(String count) {
+            IniSectionEntry e = entries.get("count");
+            if (e == null) {
+                entries.put("count", new IniSectionEntry("count", count));
+                return true;
+            }
+            return e.update(count);
+        }
+
+        @Override
+        void addUnnamed(String value) {
+            int index = get("count", 0) + 1;
+            if (appendUnnamed(index, value, null, true)) {
+                Ini.this.entryChanged(this, "count");
+                modified(Integer.toString(index));
+            }
+        }
+
+        void unnamedAppended() {
+            Ini.this.changedInBulk();
+            modified();
+        }
+
+        /**
+         * Sets value, which is decoded on first access
+         */
+        void set(String key, LazyValues values, int offset, int length, String comment) {
+            IniSectionEntry e = entries.get(key);
+            if (e == null) {
+                put(new IniSectionEntry(pooled(key), values, offset, length, comment));
+                modified(key);
+            } else if (comment == null) {
+                e.setValue(pooled(values.decode(offset, length)));
             } else {
-                e.setValue(String.valueOf(value));
+                e.setValue(pooled(values.decode(offset, length)));
                 e.setComment(comment);
             }
         }
@@ -428,12 +859,15 @@ public class Ini implements IniProperties {
             if (this.comment == null ? comment == null : this.comment.equals(comment))
                 return;
             this.comment = comment;
+            Ini.this.sectionChanged(this);
             modified();
         }
 
         public void remove(String key) {
-            entries.remove(key);
-            modified();
+            IniSectionEntry e = entries.remove(key);
+            if (e != null && e.listKey())
+                unnamed = null;
+            modified(key);
         }
 
         public Set<String> keys() {
@@ -445,9 +879,62 @@ public class Ini implements IniProperties {
         }
 
         public SectionEntry getUnnamed(int index) {
+            UnnamedIndex u = unnamedIndex();
+            if (u != null && index >= 0 && index < u.size)
+                return u.elements[index];
             return entries.get(Integer.toString(index + 1));
         }
 
+        /**
+         * @return count of unnamed elements, or 0 if count isn't a number,
+         * so section isn't a list
+         */
+        private int unnamedCount() {
+            IniSectionEntry e = entries.get("count");
+            try {
+                return e == null ? 0 : e.intValue(0);
+            } catch (NumberFormatException ex) {
+                return 0;
+            }
+        }
+
+        /**
+         * @return index of elements 1..count, or null if count is greater
+         * than number of entries, so most of elements are missing
+         */
+        private UnnamedIndex unnamedIndex() {
+            UnnamedIndex u = unnamed;
+            if (u != null)
+                return u;
+            int count = unnamedCount();
+            if (count > entries.size())
+                return null;
+            IniSectionEntry[] elements = new IniSectionEntry[Math.max(count, 0)];
+            for (int i = 0; i < elements.length; i++)
+                elements[i] = entries.get(Integer.toString(i + 1));
+            return unnamed = new UnnamedIndex(elements, elements.length);
+        }
+
+        public int[] unnamedInts() {
+            int[] r = new int[Math.max(unnamedCount(), 0)];
+            for (int i = 0; i < r.length; i++) {
+                IniSectionEntry e = (IniSectionEntry) getUnnamed(i);
+                if (e != null)
+                    r[i] = e.intValue(0);
+            }
+            return r;
+        }
+
+        public long[] unnamedLongs() {
+            long[] r = new long[Math.max(unnamedCount(), 0)];
+            for (int i = 0; i < r.length; i++) {
+                IniSectionEntry e = (IniSectionEntry) getUnnamed(i);
+                if (e != null)
+                    r[i] = e.longValue(0);
+            }
+            return r;
+        }
+
         public void setUnnamedComment(String comment) {
             if (!isSet("count"))
                 set("count", "0", comment);
@@ -473,26 +960,98 @@ public class Ini implements IniProperties {
 
     }
 
-    private class LazilyInitializedSection extends AbstractSection {
+    /**
+     * Same as {@link Integer#parseInt(java.lang.String)}, but without
+     * exception
+     * @return positive number, or 0 if name is not positive number
+     */
+    static int elementNumber(String name) {
+        int l = name.length();
+        if (l == 0)
+            return 0;
+        int i = 0;
+        char c = name.charAt(0);
+        if (c == '+' || c == '-') {
+            if (l == 1)
+                return 0;
+            i++;
+        }
+        long n = 0;
+        for (; i < l; i++) {
+            int d = Character.digit(name.charAt(i), 10);
+            if (d < 0)
+                return 0;
+            n = n * 10 + d;
+            if (n > Integer.MAX_VALUE)
+                return 0;
+        }
+        return c == '-' ? 0 : (int) n;
+    }
+
+    /**
+     * Array of unnamed list element entries, null for missing elements.
+     * Fields are final, so instance is safe to read without locking. Append
+     * fills spare slot of the same array and returns new instance.
+     */
+    private static final class UnnamedIndex {
+
+        final IniSection.IniSectionEntry[] elements;
+        final int size;
+
+        UnnamedIndex(IniSection.IniSectionEntry[] elements, int size) {
+            this.elements = elements;
+            this.size = size;
+        }
+
+        UnnamedIndex append(IniSection.IniSectionEntry e) {
+            IniSection.IniSectionEntry[] a = elements;
+            if (size == a.length)
+                a = Arrays.copyOf(a, Math.max(8, size * 2));
+            a[size] = e;
+            return new UnnamedIndex(a, size + 1);
+        }
+
+    }
+
+    /**
+     * Primitive decoded from entry value, boxed once and reused while value
+     * is the same string
+     */
+    static final class Typed {
+
+        final String source;
+        final Object value;
+
+        Typed(String source, Object value) {
+            this.source = source;
+            this.value = value;
+        }
+
+    }
+
+    /**
+     * Section, which is allocated on first modification
+     */
+    class LazilyInitializedSection extends AbstractSection {
         
         private final String sectionName;
-        private IniSection section = null;
+        private AbstractSection section = null;
 
         public LazilyInitializedSection(String sectionName) {
             this.sectionName = sectionName;
         }
 
-        private IniSection getSection() {
+        private AbstractSection getSection() {
             if (section != null)
                 return section;
-            section = (IniSection) Ini.this.section(sectionName, false, false);
+            section = (AbstractSection) Ini.this.section(sectionName, false, false);
             return section;
         }
 
-        private IniSection section() {
+        private AbstractSection section() {
             if (section != null)
                 return section;
-            section = (IniSection) Ini.this.section(sectionName, true, false);
+            section = (AbstractSection) Ini.this.section(sectionName, true, false);
             return section;
         }
 
@@ -557,6 +1116,19 @@ public class Ini implements IniProperties {
             section().setUnnamed(elems);
         }
 
+        @Override
+        void addUnnamed(String value) {
+            section().addUnnamed(value);
+        }
+
+        public int[] unnamedInts() {
+            return getSection() == null ? new int[0] : section.unnamedInts();
+        }
+
+        public long[] unnamedLongs() {
+            return getSection() == null ? new long[0] : section.unnamedLongs();
+        }
+
         public String get(String key, String def) {
             return getSection() == null ? def : section.get(key, def);
         }
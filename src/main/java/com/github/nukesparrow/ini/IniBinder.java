@@ -0,0 +1,46 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini;
+
+import com.github.nukesparrow.virtfs.VFilesystem;
+
+/**
+ * Binds properties to objects of one type without reflection. Binders are
+ * generated by ini-processor for types annotated by {@link IniBinding}, and
+ * are found by {@link java.util.ServiceLoader}.
+ *
+ * @see IniUtil#binder(java.lang.Class)
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+public interface IniBinder<T> {
+
+    public Class<T> getType();
+
+    /**
+     * Sets fields and setters of object from properties, which are set
+     * @throws UnsupportedOperationException if type is interface
+     */
+    public T load(IniProperties properties, T obj, VFilesystem vfs);
+
+    /**
+     * @return new object loaded from properties, or implementation of
+     * interface, which reads them
+     * @throws UnsupportedOperationException if class has no public
+     * constructor without parameters
+     */
+    public T create(IniProperties properties, VFilesystem vfs);
+
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks class or interface, for which ini-processor generates
+ * {@link IniBinder} at compile time, so it is bound without reflection.
+ *
+ * Binder of class sets the same public fields and setters as
+ * {@link IniUtil#loadPOJO(IniProperties, Object)}. Interface gets
+ * implementation, which getters return values of keys named after them,
+ * or by {@link IniKeyName}, decoded and cached until properties change.
+ *
+ * @see IniDefault
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface IniBinding {
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+
+/**
+ * Pull reader, which reports .ini contents line by line without building
+ * {@link Ini}. Lines are classified and unescaped by
+ * {@link StringIniParser#parseLine(java.lang.String)}, so events always match
+ * what parser would put into Ini. Single {@link Event} instance is reused for
+ * all events, memory usage is bounded by the longest line.
+ *
+ * <pre>
+ * IniEventReader r = new IniEventReader(reader);
+ * try {
+ *     IniEventReader.Event e;
+ *     while ((e = r.next()) != null)
+ *         if (e.getType() == IniEventReader.EventType.ENTRY)
+ *             ...
+ * } finally {
+ *     r.close();
+ * }
+ * </pre>
+ *
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+public class IniEventReader implements Closeable {
+
+    public enum EventType {
+        /** Section header, {@link Event#getSection()} is the new section */
+        SECTION,
+        /** key=value line */
+        ENTRY,
+        /** Line without '=', element of section unnamed list */
+        UNNAMED,
+        /** Comment line, {@link Event#getValue()} is text after '#' */
+        COMMENT
+    }
+
+    public static final class Event {
+
+        private EventType type;
+        private String section;
+        private String key;
+        private String value;
+
+        public EventType getType() {
+            return type;
+        }
+
+        /**
+         * @return current section name, null for entries before first section
+         */
+        public String getSection() {
+            return section;
+        }
+
+        /**
+         * @return key for {@link EventType#ENTRY}, null otherwise
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return value of entry or unnamed element, comment text, or null
+         * for section header
+         */
+        public String getValue() {
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return type + "[" + section + "] " + key + "=" + value;
+        }
+
+    }
+
+    private final BufferedReader reader;
+    private final Event event = new Event();
+    private boolean produced;
+
+    private final StringIniParser parser = new StringIniParser() {
+
+        @Override
+        void blankLine() {
+        }
+
+        @Override
+        void comment(String text) {
+            produce(EventType.COMMENT, null, text);
+        }
+
+        @Override
+        void sectionStart(String name) {
+            if ("".equals(name) || "null".equals(name))
+                name = null;
+            event.section = name;
+            produce(EventType.SECTION, null, null);
+        }
+
+        @Override
+        void unnamedItem(String value) {
+            produce(EventType.UNNAMED, null, value);
+        }
+
+        @Override
+        void entry(String key, String value) {
+            produce(EventType.ENTRY, key, value);
+        }
+
+    };
+
+    public IniEventReader(BufferedReader reader) {
+        if (reader == null)
+            throw new NullPointerException();
+        this.reader = reader;
+    }
+
+    public IniEventReader(InputStream in, Charset charset) {
+        this(new BufferedReader(new InputStreamReader(in, charset)));
+    }
+
+    private void produce(EventType type, String key, String value) {
+        event.type = type;
+        event.key = key;
+        event.value = value;
+        produced = true;
+    }
+
+    /**
+     * @return next event, or null at the end of data. Returned object is
+     * reused by following calls.
+     */
+    public Event next() throws IOException {
+        produced = false;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            parser.parseLine(line);
+            if (produced)
+                return event;
+        }
+        return null;
+    }
+
+    public void close() throws IOException {
+        reader.close();
+    }
+
+}
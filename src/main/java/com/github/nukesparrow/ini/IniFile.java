@@ -16,11 +16,48 @@
 package com.github.nukesparrow.ini;
 
 import java.io.*;
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
+ * Ini, which is loaded from file and saved to it.
+ * <p>
+ * Sections of IniFile are not thread-safe: they change their maps before
+ * the file's monitor is taken, so saves are isolated from changes only if
+ * threads, which change file concurrently with saves, including background
+ * autosave, hold the monitor, e.g. by {@code synchronized (ini)}, or by
+ * {@link #transaction}. Saves hold the monitor only while data is captured,
+ * disk I/O runs without it, unless caller holds the monitor itself.
  *
  * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
  */
@@ -37,29 +74,139 @@ public final class IniFile extends Ini {
         }
     }
 
-    private static final HashMap<File, IniFile> instances = new HashMap<File, IniFile>();
+    private static volatile boolean lazyValues = false;
 
-    public static synchronized IniFile getIni(String file) throws IOException {
+    public static boolean isLazyValues() {
+        return lazyValues;
+    }
+
+    /**
+     * Files loaded after this call keep values escaped until first access,
+     * which saves load time and memory when only some keys are read
+     * @see ByteIniParser#setLazyValues(boolean)
+     */
+    public static void setLazyValues(boolean lazyValues) {
+        IniFile.lazyValues = lazyValues;
+    }
+
+    private static volatile boolean preserveFormat = false;
+
+    public static boolean isPreserveFormat() {
+        return preserveFormat;
+    }
+
+    /**
+     * Files loaded after this call remember where their sections are, and
+     * save copies unchanged sections verbatim, keeping their formatting and
+     * comments, and writes only sections changed since load or previous
+     * save. File changed by someone else after that is written entirely.
+     */
+    public static void setPreserveFormat(boolean preserveFormat) {
+        IniFile.preserveFormat = preserveFormat;
+    }
+
+    private static volatile StringPool defaultStringPool = null;
+
+    public static StringPool getDefaultStringPool() {
+        return defaultStringPool;
+    }
+
+    /**
+     * Sets pool, which is used by files loaded after this call, so files with
+     * similar content share section names, keys and short values
+     * @see Ini#setStringPool(com.github.nukesparrow.ini.StringPool)
+     */
+    public static void setDefaultStringPool(StringPool pool) {
+        IniFile.defaultStringPool = pool;
+    }
+
+    private static volatile IniFileRegistry registry = new IniFileRegistry();
+
+    public static IniFileRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Sets registry, which is used by {@link #getIni(java.io.File)} after
+     * this call, instances of previous registry are not affected
+     */
+    public static void setRegistry(IniFileRegistry registry) {
+        if (registry == null)
+            throw new NullPointerException();
+        IniFile.registry = registry;
+    }
+
+    public static IniFile getIni(String file) throws IOException {
         return getIni(new File(file));
     }
 
-    public static synchronized IniFile getIni(File file) throws IOException {
-        IniFile ini = instances.get(file);
-        if (ini == null)
-            instances.put(file, ini = new IniFile(file));
-        return ini;
+    public static IniFile getIni(File file) throws IOException {
+        return registry.get(file);
+    }
+
+    public static final long DEFAULT_JOURNAL_THRESHOLD = 1024 * 1024;
+
+    /**
+     * How far save goes to make sure data survives crash
+     */
+    public enum Durability {
+        /**
+         * Data is left in OS buffers, file is replaced by rename, which
+         * falls back to delete and rename
+         */
+        BUFFERED,
+        /**
+         * File is replaced atomically, so it is either old or new after
+         * crash of the process
+         */
+        FLUSH,
+        /**
+         * Data is forced to disk before file is replaced
+         */
+        FSYNC_DATA,
+        /**
+         * Data and metadata are forced to disk, and directory is synced
+         * after file is replaced or created, so saved file survives power
+         * loss
+         */
+        FSYNC
     }
 
     public final File file;
+    /**
+     * Registry, which holds this instance, null if it is not registered
+     */
+    volatile IniFileRegistry.Entry registryEntry = null;
 
-    private IniFile(File file) throws IOException {
-        this.file = file;
-        if (file.exists()) {
-            Ini ini = IniStringUtil.readIniAndCloseThen(new BufferedReader(new FileReader(file)));
+    private final IniJournal journal;
+    private boolean journalEnabled = false;
+    private long journalThreshold = DEFAULT_JOURNAL_THRESHOLD;
+    /**
+     * CRC32 of base file as it was read or written, -1 if unknown
+     */
+    private long checksum = -1;
+    /**
+     * Section ranges of file, null if format is not preserved
+     */
+    private IniLayout layout = null;
+    private Durability durability = Durability.BUFFERED;
 
-            copyFrom(ini, true);
-            clearModified();
+    IniFile(File file) throws IOException {
+        this.file = file;
+        this.journal = new IniJournal(file);
+        setStringPool(defaultStringPool);
+        if (preserveFormat)
+            layout = IniLayout.read(file, this, Charset.defaultCharset(), lazyValues);
+        else if (file.exists())
+            IniStringUtil.readIni(file, this, Charset.defaultCharset(), lazyValues);
+        if (journal.getFile().exists()) {
+            checksum = IniJournal.checksum(file);
+            if (!journal.replay(this, checksum)) {
+                LOG.log(Level.WARNING, "Journal {0} is older than base file, deleting", journal.getFile());
+                journal.reset();
+            }
         }
+        clearModified();
     }
 
     private boolean autoSaveEnabled = false;
@@ -77,51 +224,1031 @@ public final class IniFile extends Ini {
     }
 
     public void setAutoSaveEnabled(boolean autoSaveEnabled) {
-        this.autoSaveEnabled = autoSaveEnabled;
-        if (autoSaveEnabled)
+        synchronized (this) {
+            this.autoSaveEnabled = autoSaveEnabled;
+            if (!autoSaveEnabled || !isModified())
+                return;
+            if (quietPeriod > 0) {
+                scheduleAutoSave();
+                return;
+            }
+        }
+        autoSaveNow();
+    }
+
+    private static ScheduledExecutorService scheduler = null;
+
+    /**
+     * Files with changes waiting for background save
+     */
+    private static final Set<IniFile> pendingSaves = Collections.newSetFromMap(new ConcurrentHashMap<IniFile, Boolean>());
+
+    /**
+     * Shared daemon thread, which runs background saves of all files. Pending
+     * saves are flushed by shutdown hook.
+     */
+    private static synchronized ScheduledExecutorService scheduler() {
+        if (scheduler == null) {
+            scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "IniFile autosave");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            Runtime.getRuntime().addShutdownHook(new Thread("IniFile autosave flush") {
+                @Override
+                public void run() {
+                    flushAll();
+                }
+            });
+        }
+        return scheduler;
+    }
+
+    /**
+     * Saves all files with pending background saves
+     */
+    public static void flushAll() {
+        for (IniFile ini : pendingSaves) {
             try {
-                saveIfModified();
+                ini.flush();
             } catch (IOException ex) {
-                throw new RuntimeException(ex);
+                LOG.log(Level.SEVERE, "Unable to save " + ini.file, ex);
+            }
+        }
+    }
+
+    private long quietPeriod = 0;
+    private long maxDelay = 0;
+
+    private ScheduledFuture<?> scheduledSave = null;
+    private long firstChange;
+    private long lastChange;
+    private int savedVersion;
+
+    private final Runnable autoSave = new Runnable() {
+        public void run() {
+            autoSave();
+        }
+    };
+
+    /**
+     * @return time without changes, after which autosave writes file in
+     * background, or 0 if file is saved on every change
+     */
+    public synchronized long getAutoSaveQuietPeriod(TimeUnit unit) {
+        return unit.convert(quietPeriod, TimeUnit.NANOSECONDS);
+    }
+
+    public synchronized long getAutoSaveMaxDelay(TimeUnit unit) {
+        return unit.convert(maxDelay, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Makes autosave asynchronous. Changes are coalesced and written by
+     * shared background thread, once there were no changes for quiet period,
+     * or max delay after the first unsaved change. Errors of background save
+     * are logged and the save is retried after max delay.
+     * @param quietPeriod 0 to save synchronously on every change
+     * @param maxDelay upper bound of delay, not less than quietPeriod
+     * @see #flush()
+     * @see #awaitSaved(long, java.util.concurrent.TimeUnit)
+     */
+    public synchronized void setAutoSaveDelay(long quietPeriod, long maxDelay, TimeUnit unit) {
+        if (quietPeriod < 0 || maxDelay < quietPeriod)
+            throw new IllegalArgumentException();
+        this.quietPeriod = unit.toNanos(quietPeriod);
+        this.maxDelay = unit.toNanos(maxDelay);
+    }
+
+    private void scheduleAutoSave() {
+        long now = System.nanoTime();
+        lastChange = now;
+        if (scheduledSave == null) {
+            firstChange = now;
+            pendingSaves.add(this);
+            scheduledSave = scheduler().schedule(autoSave, quietPeriod, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Runs on scheduler thread. Saves this file together with other files,
+     * which are due, by {@link #saveAll(java.util.Collection)}.
+     */
+    private void autoSave() {
+        long now = System.nanoTime();
+        synchronized (this) {
+            scheduledSave = null;
+            if (!takeDue(now))
+                return;
+        }
+        List<IniFile> due = new ArrayList<IniFile>();
+        due.add(this);
+        for (IniFile f : pendingSaves) {
+            if (f != this) {
+                synchronized (f) {
+                    if (f.scheduledSave != null && f.takeDue(now))
+                        due.add(f);
+                }
+            }
+        }
+
+        try {
+            saveAll(due);
+        } catch (IOException ex) {
+            LOG.log(Level.SEVERE, "Unable to save " + due, ex);
+            for (IniFile f : due) {
+                synchronized (f) {
+                    if (f.scheduledSave == null && f.isModified()) {
+                        f.firstChange = now;
+                        f.scheduledSave = scheduler().schedule(f.autoSave, Math.max(f.maxDelay, TimeUnit.SECONDS.toNanos(1)), TimeUnit.NANOSECONDS);
+                    }
+                }
+            }
+            return;
+        }
+        for (IniFile f : due) {
+            synchronized (f) {
+                f.savesCompleted();
+            }
+        }
+    }
+
+    /**
+     * @return true if file should be saved now, its scheduled save is
+     * cancelled then. Otherwise save is rescheduled if necessary.
+     */
+    private boolean takeDue(long now) {
+        if (!isModified()) {
+            if (scheduledSave != null) {
+                scheduledSave.cancel(false);
+                scheduledSave = null;
+            }
+            savesCompleted();
+            return false;
+        }
+        long due = Math.min(lastChange + quietPeriod, firstChange + maxDelay);
+        if (due - now > 0) {
+            if (scheduledSave == null)
+                scheduledSave = scheduler().schedule(autoSave, due - now, TimeUnit.NANOSECONDS);
+            return false;
+        }
+        if (scheduledSave != null) {
+            scheduledSave.cancel(false);
+            scheduledSave = null;
+        }
+        return true;
+    }
+
+    /**
+     * Forgets pending save, unless file has been changed again
+     */
+    private void savesCompleted() {
+        if (scheduledSave == null && !isModified())
+            pendingSaves.remove(this);
+        notifyAll();
+    }
+
+    /**
+     * Saves pending changes on caller thread, without waiting for background
+     * save
+     */
+    public void flush() throws IOException {
+        synchronized (this) {
+            if (scheduledSave != null) {
+                scheduledSave.cancel(false);
+                scheduledSave = null;
             }
+        }
+        saveIfModified();
+        synchronized (this) {
+            savesCompleted();
+        }
+    }
+
+    /**
+     * Waits until changes made before this call are saved
+     * @return false if changes are still not saved after timeout, or if
+     * there is no background save, which would save them
+     */
+    public synchronized boolean awaitSaved(long timeout, TimeUnit unit) throws InterruptedException {
+        int target = getVersion();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (savedVersion - target < 0 && isModified()) {
+            long left = deadline - System.nanoTime();
+            if ((scheduledSave == null && !committing) || left <= 0)
+                return false;
+            TimeUnit.NANOSECONDS.timedWait(this, left);
+        }
+        return true;
+    }
+
+    public synchronized Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * Sets durability of saves and journal appends, default is
+     * {@link Durability#BUFFERED}
+     * @see #saveAll(java.util.Collection)
+     */
+    public synchronized void setDurability(Durability durability) {
+        if (durability == null)
+            throw new NullPointerException();
+        this.durability = durability;
+    }
+
+    public synchronized boolean isJournalEnabled() {
+        return journalEnabled;
+    }
+
+    /**
+     * In journal mode {@link #save()} appends changed entries to
+     * <i>file</i>.journal instead of rewriting whole file, so cost of save
+     * depends on size of change, not on size of file. Journal is applied on
+     * load, and is folded into base file when it grows above
+     * {@link #getJournalThreshold()}, by {@link #compact()}, or by save in
+     * normal mode.
+     */
+    public synchronized void setJournalEnabled(boolean journalEnabled) {
+        if (journalEnabled && !this.journalEnabled && isModified())
+            journal.changedInBulk(); // changes made so far are not recorded
+        this.journalEnabled = journalEnabled;
+    }
+
+    public synchronized long getJournalThreshold() {
+        return journalThreshold;
+    }
+
+    public synchronized void setJournalThreshold(long journalThreshold) {
+        this.journalThreshold = journalThreshold;
     }
 
     @Override
-    protected synchronized void modified() {
-        super.modified();
-        if (autoSaveEnabled)
+    synchronized void entryChanged(IniSection section, String key) {
+        if (journalEnabled)
+            journal.entryChanged(section.getName(), key, !section.isSet(key));
+    }
+
+    @Override
+    synchronized void sectionChanged(IniSection section) {
+        if (journalEnabled)
+            journal.sectionChanged(section.getName());
+    }
+
+    @Override
+    synchronized void changedInBulk() {
+        if (journalEnabled)
+            journal.changedInBulk();
+    }
+
+    /**
+     * Transaction is being applied by thread, which holds monitor
+     */
+    private boolean applying = false;
+    /**
+     * Synchronous autosave has been requested while transaction was being
+     * applied
+     */
+    private boolean saveAfterApply = false;
+
+    /**
+     * Transaction is applied while file is locked, and triggers single
+     * save, which runs after lock is released
+     */
+    @Override
+    void apply(IniTransaction tx) {
+        boolean save = false;
+        synchronized (this) {
+            boolean outer = !applying;
+            applying = true;
             try {
-                save();
-            } catch (IOException ex) {
-                throw new RuntimeException(ex);
+                super.apply(tx);
+            } finally {
+                if (outer) {
+                    applying = false;
+                    save = saveAfterApply;
+                    saveAfterApply = false;
+                }
             }
+        }
+        if (save)
+            autoSaveNow();
+    }
+
+    @Override
+    public synchronized IniSnapshot snapshot() {
+        return super.snapshot();
+    }
+
+    /**
+     * Synchronous autosave runs after monitor is released, so only capture
+     * of data runs under it, as for other saves
+     */
+    @Override
+    protected void modified() {
+        synchronized (this) {
+            super.modified();
+            IniFileRegistry.Entry e = registryEntry;
+            if (e != null && e.strong != this)
+                e.promote(this); // not evicted until saved
+            if (reloading)
+                return; // file already has these changes
+            if (!autoSaveEnabled)
+                return;
+            if (quietPeriod > 0) {
+                scheduleAutoSave();
+                return;
+            }
+            if (applying) {
+                saveAfterApply = true;
+                return;
+            }
+        }
+        autoSaveNow();
+    }
+
+    private void autoSaveNow() {
+        if (shared && Thread.holdsLock(this)) {
+            scheduleAutoSave(); // file lock can't be taken while caller holds monitor
+            return;
+        }
+        try {
+            save();
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
     }
     
+    private volatile boolean hotReload = false;
+    /**
+     * {@link #stat()} of file, as it has been read or written by this
+     * instance
+     */
+    private volatile long[] diskStat = {-1, -1, -1};
+    /**
+     * State of file and journal as they have been read or written, changes
+     * made by someone else are found by diff with it. Null unless hot
+     * reload is enabled.
+     */
+    private IniSnapshot disk = null;
+    private boolean reloading = false;
+
+    public boolean isHotReload() {
+        return hotReload;
+    }
+
+    /**
+     * With hot reload file is watched, and changes made to it by someone
+     * else are merged into this instance shortly after they stop: entries,
+     * which are changed on disk, are updated, and versions are incremented,
+     * so existing {@link Ini.Section} references see new values. Entries
+     * changed both here and on disk get values from disk, other unsaved
+     * changes are kept. Reload doesn't trigger autosave.
+     *
+     * All files are watched by single daemon thread. Directories are
+     * watched by {@link java.nio.file.WatchService}, or, if file system
+     * can't be watched, files are polled every few seconds.
+     */
+    public void setHotReload(boolean hotReload) throws IOException {
+        synchronized (this) {
+            if (hotReload == this.hotReload)
+                return;
+            this.hotReload = hotReload;
+            if (!hotReload) {
+                if (!shared)
+                    disk = null;
+                IniWatcher.get().unregister(this);
+                return;
+            }
+        }
+        trackDisk();
+        IniWatcher.get().register(this);
+    }
+
+    /**
+     * @return true if file has been changed since it has been read or
+     * written by this instance
+     */
+    boolean isChangedOnDisk() {
+        return !Arrays.equals(stat(), diskStat);
+    }
+
+    /**
+     * @return size, modification time and identity of file, read by single
+     * stat, or zeros if file doesn't exist. Identity changes when file is
+     * replaced, so replacement of the same size within timestamp
+     * granularity is noticed too.
+     */
+    private long[] stat() {
+        try {
+            BasicFileAttributes a = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            Object key = a.fileKey();
+            return new long[] {a.size(), a.lastModifiedTime().to(TimeUnit.NANOSECONDS), key == null ? 0 : key.hashCode()};
+        } catch (IOException ex) {
+            return new long[] {0, 0, 0};
+        }
+    }
+
+    /**
+     * Disk state is remembered, so changes made by someone else can be
+     * merged
+     */
+    private boolean tracksDisk() {
+        return hotReload || shared;
+    }
+
+    public static final long DEFAULT_CHECK_INTERVAL = 1000;
+
+    private volatile boolean shared = false;
+    private long checkInterval = DEFAULT_CHECK_INTERVAL;
+    private long nextCheck = System.nanoTime();
+
+    public boolean isShared() {
+        return shared;
+    }
+
+    /**
+     * Multi-process mode, for file, which is changed by several processes.
+     *
+     * Save takes exclusive lock of file, which is held by one process at a
+     * time, merges changes made by other processes since file has been read
+     * or written by this instance, and writes result, so concurrent writers
+     * don't lose each other's updates. Entries changed both here and by
+     * other process get values from this instance. Journal is not used, and
+     * file is always replaced atomically. {@link #refresh()} merges changes
+     * of other processes into this instance.
+     * <p>
+     * File lock is taken before monitor of this instance, so shared file
+     * can't be saved while caller holds the monitor, save throws
+     * {@link IllegalStateException} then, and autosave runs in background.
+     */
+    public void setShared(boolean shared) throws IOException {
+        synchronized (this) {
+            if (shared == this.shared)
+                return;
+            this.shared = shared;
+            if (!shared) {
+                if (!hotReload)
+                    disk = null;
+                return;
+            }
+        }
+        trackDisk();
+    }
+
+    /**
+     * Remembers state of file, which changes made by someone else are found
+     * by diff with. Unmodified instance holds what it has read or written
+     * last, so it is the base, and file is merged on next check, since it
+     * may have been replaced after it has been read. Otherwise file as it
+     * is now is the base.
+     */
+    private void trackDisk() throws IOException {
+        synchronized (this) {
+            if (disk != null)
+                return;
+            if (!isModified()) {
+                disk = snapshot();
+                diskStat = new long[] {-1, -1, -1};
+                return;
+            }
+        }
+        reload(false);
+    }
+
+    public synchronized long getCheckInterval() {
+        return checkInterval;
+    }
+
+    /**
+     * @param checkInterval minimal time between checks of {@link #refresh()}
+     * in milliseconds
+     */
+    public synchronized void setCheckInterval(long checkInterval) {
+        if (checkInterval < 0)
+            throw new IllegalArgumentException();
+        this.checkInterval = checkInterval;
+        nextCheck = System.nanoTime();
+    }
+
+    /**
+     * Merges changes made to file by other processes. File is checked at
+     * most once per check interval, by single stat of size and modification
+     * time, and reloaded only if its content hash has changed too, so
+     * calling this method before each read is cheap.
+     * @return true if changes have been merged
+     * @see #setShared(boolean)
+     */
+    public boolean refresh() throws IOException {
+        long now = System.nanoTime();
+        synchronized (this) {
+            if (now - nextCheck < 0)
+                return false;
+            nextCheck = now + TimeUnit.MILLISECONDS.toNanos(checkInterval);
+        }
+        return sync(false);
+    }
+
+    /**
+     * Merges file if it has been changed since it has been read or written
+     * @param keepLocal true to keep unsaved changes of entries, which have
+     * been changed on disk too
+     */
+    private boolean sync(boolean keepLocal) throws IOException {
+        if (!isChangedOnDisk())
+            return false;
+        return reload(true, keepLocal);
+    }
+
+    /**
+     * Reads file and merges changes made to it by someone else
+     * @see #setHotReload(boolean)
+     */
+    public void reload() throws IOException {
+        reload(true, false);
+    }
+
+    private void reload(boolean merge) throws IOException {
+        reload(merge, false);
+    }
+
+    /**
+     * File is parsed without lock, and merged while file is locked. File,
+     * which content hash has not changed, is not parsed.
+     * @param merge false to only remember state of file
+     * @return true if content of file has changed, and if merge is true,
+     * differs from state, which has been known
+     */
+    private boolean reload(boolean merge, boolean keepLocal) throws IOException {
+        for (int attempt = 0;; attempt++) {
+            long[] stat = stat();
+            byte[] data = file.exists() ? IniJournal.readAll(file) : new byte[0];
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            long sum = crc.getValue();
+            boolean journalExists = journal.getFile().exists();
+            long known;
+            synchronized (this) {
+                known = checksum;
+            }
+            IniSnapshot next = null;
+            boolean staleJournal = false;
+            if (!merge || sum != known || journalExists) {
+                Ini fresh = new Ini();
+                new ParallelIniParser(fresh, Charset.defaultCharset(), null).parse(ByteBuffer.wrap(data));
+                staleJournal = journalExists && !journal.replay(fresh, sum);
+                next = fresh.snapshot();
+            }
+
+            boolean changed;
+            int before;
+            synchronized (this) {
+                if (!Arrays.equals(stat, stat()) && attempt < 3)
+                    continue; // file is being written
+                diskStat = stat;
+                if (next == null)
+                    return false; // touched, but not changed
+                before = getVersion();
+                changed = !merge || merge(next, staleJournal, keepLocal);
+                disk = tracksDisk() ? next : null;
+                checksum = sum;
+            }
+            if (getVersion() != before)
+                fireChanged(); // merged changes are applied as single change
+            return changed;
+        }
+    }
+
+    /**
+     * @return true if next differs from state of file, which has been known
+     */
+    private boolean merge(IniSnapshot next, boolean staleJournal, boolean keepLocal) {
+        IniSnapshot base = disk != null ? disk : snapshot();
+        boolean wasModified = isModified();
+        IniTransaction local = null;
+        if (keepLocal && wasModified) {
+            local = begin();
+            local.diff(base, snapshot());
+        }
+        IniTransaction tx = begin();
+        tx.diff(base, next);
+        reloading = true;
+        try {
+            apply(tx);
+            if (local != null)
+                apply(local);
+        } finally {
+            reloading = false;
+        }
+        if (staleJournal) {
+            journal.reset();
+            if (wasModified)
+                journal.changedInBulk(); // unsaved changes are not recorded anymore
+        }
+        if (!wasModified)
+            clearModified();
+        return !tx.isEmpty();
+    }
+
     public void saveIfModified() throws IOException {
         if (isModified())
             save();
     }
 
     public void save() throws IOException {
-        File tmpFile = new File(file.getPath() + "~");
-        BufferedWriter w = new BufferedWriter(new FileWriter(tmpFile));
+        commit(Collections.singletonList(this), false, false);
+    }
+
+    /**
+     * Rewrites whole file and deletes journal
+     */
+    public void compact() throws IOException {
+        commit(Collections.singletonList(this), true, false);
+    }
+
+    /**
+     * Saves modified files as a group: data of all files is written first,
+     * then synced, then files are replaced, and each directory is synced
+     * once. Files are synced in parallel, so file systems, which commit
+     * concurrent syncs together, as journaling ones do, wait about once per
+     * group rather than once per file. Only files passed together are
+     * grouped, concurrent {@link #save()} calls of other threads are not.
+     */
+    public static void saveAll(Collection<? extends IniFile> files) throws IOException {
+        synchronized (groupCommit) {
+            commit(files, false, true);
+        }
+    }
+
+    /**
+     * Serializes group commits, which hold commit of several files at once
+     */
+    private static final Object groupCommit = new Object();
+
+    /**
+     * Commit of this file is in progress, commits of the same file are
+     * serialized, so they use the same temporary file and are installed in
+     * order
+     */
+    private boolean committing = false;
+    /**
+     * Number of commits installed by this instance
+     */
+    private int saveCount = 0;
+
+    synchronized int getSaveCount() {
+        return saveCount;
+    }
+
+    /**
+     * Instances of the same file are committed one after another, so the
+     * later one merges or overwrites result of the earlier one, instead of
+     * both writing the same temporary file
+     */
+    private static void commit(Collection<? extends IniFile> files, boolean rewrite, boolean onlyModified) throws IOException {
+        if (files.size() < 2) {
+            commitDistinct(files, rewrite, onlyModified);
+            return;
+        }
+        List<IniFile> rest = new ArrayList<IniFile>(files);
+        while (!rest.isEmpty()) {
+            Set<String> paths = new HashSet<String>();
+            List<IniFile> distinct = new ArrayList<IniFile>(rest.size());
+            List<IniFile> later = new ArrayList<IniFile>();
+            for (IniFile f : rest) {
+                if (paths.add(f.file.getCanonicalPath()))
+                    distinct.add(f);
+                else
+                    later.add(f);
+            }
+            commitDistinct(distinct, rewrite, onlyModified);
+            rest = later;
+        }
+    }
+
+    private static void commitDistinct(Collection<? extends IniFile> files, boolean rewrite, boolean onlyModified) throws IOException {
+        List<Commit> commits = new ArrayList<Commit>(files.size());
+        List<IniFileLock> locks = new ArrayList<IniFileLock>();
         try {
+            lockShared(files, locks);
+            for (IniFile f : files) {
+                synchronized (f) {
+                    while (f.committing) {
+                        try {
+                            f.wait();
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                            throw new InterruptedIOException();
+                        }
+                    }
+                    if (onlyModified && !f.isModified())
+                        continue;
+                    f.committing = true;
+                    Commit c = f.new Commit();
+                    commits.add(c);
+                    c.capture(rewrite);
+                }
+            }
+
+            for (Commit c : commits)
+                c.write();
+
+            forceAll(commits);
+
+            LinkedHashSet<File> directories = new LinkedHashSet<File>();
+            for (Commit c : commits) {
+                synchronized (c.owner()) {
+                    c.install();
+                }
+                if (c.durability == Durability.FSYNC && c.created)
+                    directories.add(c.owner().file.getAbsoluteFile().getParentFile());
+            }
+            for (File d : directories)
+                syncDirectory(d);
+        } finally {
+            for (Commit c : commits) {
+                synchronized (c.owner()) {
+                    c.abort();
+                    c.owner().committing = false;
+                    c.owner().notifyAll();
+                }
+            }
+            for (IniFileLock l : locks)
+                l.close();
+        }
+    }
+
+    private static ExecutorService syncer = null;
+
+    /**
+     * Daemon threads, which sync files of group commit in parallel
+     */
+    private static synchronized ExecutorService syncer() {
+        if (syncer == null) {
+            syncer = Executors.newCachedThreadPool(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "IniFile sync");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return syncer;
+    }
+
+    /**
+     * Forces commits to disk in parallel, the first one on calling thread.
+     * Waits for all of them even if interrupted, since streams are closed
+     * after that.
+     */
+    private static void forceAll(List<Commit> commits) throws IOException {
+        List<Commit> forced = new ArrayList<Commit>(commits.size());
+        for (Commit c : commits)
+            if (c.needsForce())
+                forced.add(c);
+        if (forced.size() < 2) {
+            for (Commit c : forced)
+                c.force();
+            return;
+        }
+
+        List<Future<Void>> syncs = new ArrayList<Future<Void>>(forced.size() - 1);
+        for (final Commit c : forced.subList(1, forced.size())) {
+            syncs.add(syncer().submit(new Callable<Void>() {
+                public Void call() throws IOException {
+                    c.force();
+                    return null;
+                }
+            }));
+        }
+        Throwable failure = null;
+        try {
+            forced.get(0).force();
+        } catch (IOException ex) {
+            failure = ex;
+        } catch (RuntimeException ex) {
+            failure = ex;
+        }
+        boolean interrupted = false;
+        for (Future<Void> f : syncs) {
+            for (;;) {
+                try {
+                    f.get();
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                    continue;
+                } catch (ExecutionException ex) {
+                    if (failure == null)
+                        failure = ex.getCause();
+                }
+                break;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        if (failure instanceof IOException)
+            throw (IOException) failure;
+        if (failure instanceof RuntimeException)
+            throw (RuntimeException) failure;
+        if (failure != null)
+            throw new IOException(failure);
+    }
+
+    /**
+     * Locks shared files in order of paths, so processes saving the same
+     * files don't deadlock, and merges changes of other processes. Locks
+     * are taken before monitors of files.
+     */
+    private static void lockShared(Collection<? extends IniFile> files, List<IniFileLock> locks) throws IOException {
+        TreeMap<String, IniFile> shared = new TreeMap<String, IniFile>();
+        for (IniFile f : files) {
+            if (!f.shared)
+                continue;
+            if (Thread.holdsLock(f))
+                throw new IllegalStateException("Shared file " + f.file + " can't be saved while its monitor is held");
+            shared.put(IniFileLock.path(f.file), f);
+        }
+        for (IniFile f : shared.values()) {
+            locks.add(IniFileLock.acquire(f.file));
+            f.sync(true);
+        }
+    }
+
+    /**
+     * Makes rename and creation of files in directory durable. Not every
+     * platform can open directory, so errors are ignored.
+     */
+    private static void syncDirectory(File dir) {
+        try {
+            FileChannel ch = FileChannel.open(dir.toPath(), StandardOpenOption.READ);
             try {
-                IniStringUtil.buildIni(w, this);
-                clearModified();
+                ch.force(true);
             } finally {
-                w.close();
+                ch.close();
+            }
+        } catch (IOException ex) {
+            LOG.log(Level.FINE, "Unable to sync directory " + dir, ex);
+        }
+    }
+
+    /**
+     * Single save: data is captured while file is locked, then written and
+     * forced to disk without lock, and installed. File stays modified until
+     * commit is installed.
+     */
+    private final class Commit {
+
+        final int version = getVersion();
+        final Durability durability = IniFile.this.durability;
+
+        private FileOutputStream out = null;
+        /**
+         * Temporary file, which replaces base file, or null if journal is
+         * appended
+         */
+        private File tmp = null;
+        /**
+         * New directory entry is created
+         */
+        boolean created = false;
+        private byte[] records = null;
+        private IniLayout.Plan plan = null;
+        private IniSnapshot snapshot = null;
+        /**
+         * State being saved, if hot reload is enabled
+         */
+        private IniSnapshot saved = null;
+        private CRC32 crc = null;
+        private IniLayout written = null;
+        private boolean installed = false;
+
+        IniFile owner() {
+            return IniFile.this;
+        }
+
+        /**
+         * Captures data to write, called while file is locked
+         */
+        void capture(boolean rewrite) throws IOException {
+            if (tracksDisk())
+                saved = snapshot();
+            if (!rewrite && journalEnabled && !shared && !journal.isBulk() && journal.length() < journalThreshold) {
+                if (checksum == -1)
+                    checksum = IniJournal.checksum(file);
+                created = journal.length() == 0;
+                records = journal.records(IniFile.this, checksum);
+                return;
             }
-            if (!tmpFile.renameTo(file)) {
-                file.delete();
-                if (!tmpFile.renameTo(file)) {
-                    throw new IOException("Unable to save config file (data: " + IniStringUtil.iniToString(this) + '"');
+
+            tmp = new File(file.getPath() + "~");
+            created = true;
+            if (layout != null)
+                plan = layout.plan(IniFile.this, file);
+            else
+                snapshot = snapshot();
+        }
+
+        /**
+         * Writes captured data, called without lock
+         */
+        void write() throws IOException {
+            if (tmp == null) {
+                if (records != null)
+                    out = journal.append(records);
+                return;
+            }
+
+            try {
+                out = new FileOutputStream(tmp);
+                if (plan != null) {
+                    written = plan.write(out, Charset.defaultCharset());
+                } else {
+                    crc = new CRC32();
+                    BufferedWriter w = new BufferedWriter(new OutputStreamWriter(new CheckedOutputStream(out, crc), Charset.defaultCharset()));
+                    IniStringUtil.buildIni(w, snapshot);
+                    w.flush();
                 }
+            } catch (IOException ex) {
+                throw new IOException("Unable to save config file " + file, ex);
             }
-        } catch (IOException ex) {
-            tmpFile.delete();
-            throw new IOException("Unable to save config file (data: " + IniStringUtil.iniToString(this) + '"', ex);
         }
+
+        boolean needsForce() {
+            return out != null && durability.compareTo(Durability.FSYNC_DATA) >= 0;
+        }
+
+        void force() throws IOException {
+            if (needsForce())
+                out.getChannel().force(durability == Durability.FSYNC);
+        }
+
+        void install() throws IOException {
+            if (out != null) {
+                out.close();
+                out = null;
+            }
+            if (tmp != null) {
+                try {
+                    replace(tmp, file);
+                } catch (IOException ex) {
+                    throw new IOException("Unable to save config file " + file, ex);
+                }
+                tmp = null;
+                checksum = crc == null ? -1 : crc.getValue();
+                if (written != null) {
+                    written.stamp(file);
+                    layout = written;
+                }
+                journal.reset();
+                diskStat = stat();
+            }
+            if (saved != null && tracksDisk())
+                disk = saved;
+            if (getVersion() == version)
+                clearModified(); // otherwise file has been changed while data was synced
+            if (savedVersion - version < 0)
+                savedVersion = version;
+            installed = true;
+            saveCount++;
+        }
+
+        private void replace(File tmp, File file) throws IOException {
+            if (durability == Durability.BUFFERED && !shared) {
+                if (!tmp.renameTo(file)) {
+                    file.delete();
+                    if (!tmp.renameTo(file))
+                        throw new IOException("Unable to rename " + tmp + " to " + file);
+                }
+                return;
+            }
+            try {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        /**
+         * Releases resources of commit, which has not been installed
+         */
+        void abort() {
+            if (installed)
+                return;
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignore) {
+                }
+                out = null;
+            }
+            if (tmp != null)
+                tmp.delete();
+            else if (journalEnabled)
+                journal.changedInBulk(); // appended records may be lost
+        }
+
     }
 
 }
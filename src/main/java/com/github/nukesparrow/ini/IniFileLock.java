@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Exclusive lock of file, which is held by writer in one process at a time.
+ *
+ * Lock is taken on separate lock file, because file itself is replaced on
+ * save. {@link FileLock} is held by whole JVM, so threads of one JVM are
+ * serialized by {@link ReentrantLock} first. Lock file is never deleted,
+ * deleting it would let two processes lock different files. Lock must not
+ * be acquired while monitor of file is held, thread, which holds the lock,
+ * may wait for the monitor.
+ *
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+final class IniFileLock implements Closeable {
+
+    private static final ConcurrentHashMap<String, ReentrantLock> locks = new ConcurrentHashMap<String, ReentrantLock>();
+
+    static File lockFile(File file) {
+        return new File(file.getPath() + ".lock");
+    }
+
+    /**
+     * @return path, which identifies lock of file
+     */
+    static String path(File file) throws IOException {
+        return lockFile(file).getCanonicalPath();
+    }
+
+    /**
+     * Waits until lock of file is acquired. Thread, which holds the lock
+     * already, gets nested lock, which doesn't lock file again.
+     */
+    static IniFileLock acquire(File file) throws IOException {
+        File lockFile = lockFile(file);
+        String path = lockFile.getCanonicalPath();
+        ReentrantLock local = locks.get(path);
+        if (local == null) {
+            ReentrantLock l = locks.putIfAbsent(path, local = new ReentrantLock());
+            if (l != null)
+                local = l;
+        }
+        try {
+            local.lockInterruptibly();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        if (local.getHoldCount() > 1)
+            return new IniFileLock(local, null, null); // FileLock is held by JVM, it can't be taken twice
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(lockFile, "rw");
+            FileChannel ch = raf.getChannel();
+            return new IniFileLock(local, raf, ch.lock());
+        } catch (IOException ex) {
+            if (raf != null)
+                raf.close();
+            local.unlock();
+            throw ex;
+        } catch (RuntimeException ex) {
+            if (raf != null)
+                raf.close();
+            local.unlock();
+            throw ex;
+        }
+    }
+
+    private final ReentrantLock local;
+    private final RandomAccessFile raf;
+    private final FileLock lock;
+
+    private IniFileLock(ReentrantLock local, RandomAccessFile raf, FileLock lock) {
+        this.local = local;
+        this.raf = raf;
+        this.lock = lock;
+    }
+
+    public void close() throws IOException {
+        if (lock == null) {
+            local.unlock();
+            return;
+        }
+        try {
+            lock.release();
+        } finally {
+            try {
+                raf.close();
+            } finally {
+                local.unlock();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,486 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared {@link IniFile} instances, one per file.
+ *
+ * Files are identified by canonical path, so different paths of the same
+ * file give the same instance. Lookup doesn't lock, and file is loaded
+ * exactly once, threads requesting it meanwhile wait for load. Registry
+ * keeps at most {@link #getMaxSize()} instances strongly reachable, least
+ * recently used clean instances above that are retained by soft or weak
+ * reference, depending on {@link Retention}. Entry of evicted instance is
+ * kept until instance is collected, so there is never more than one
+ * instance of file. Modified instances are never evicted, so unsaved
+ * changes are not lost.
+ *
+ * @see IniFile#getIni(java.io.File)
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+public class IniFileRegistry {
+
+    public static final int DEFAULT_MAX_SIZE = 256;
+
+    /**
+     * How evicted instances are retained: instance, which is still
+     * retained, is returned again instead of loading new one
+     */
+    public enum Retention {
+        /**
+         * Evicted instances are not retained by registry. Instance, which
+         * is still reachable elsewhere, is returned again, since two
+         * instances of one file would diverge, so this is same as
+         * {@link #WEAK}.
+         */
+        NONE,
+        SOFT,
+        WEAK
+    }
+
+    private static final int MAX_ALIASES = 4096;
+
+    private final int maxSize;
+    private final Retention retention;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    /**
+     * Canonical paths of files as they have been given, so lookup doesn't
+     * access file system
+     */
+    private final ConcurrentHashMap<File, String> aliases = new ConcurrentHashMap<File, String>();
+    private final ReferenceQueue<IniFile> cleared = new ReferenceQueue<IniFile>();
+    private final AtomicInteger strongCount = new AtomicInteger();
+    private final Object evictionLock = new Object();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong loadTime = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public IniFileRegistry() {
+        this(DEFAULT_MAX_SIZE, Retention.SOFT);
+    }
+
+    /**
+     * @param maxSize number of instances, which are kept strongly
+     * reachable
+     */
+    public IniFileRegistry(int maxSize, Retention retention) {
+        if (maxSize < 0 || retention == null)
+            throw new IllegalArgumentException();
+        this.maxSize = maxSize;
+        this.retention = retention;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public Retention getRetention() {
+        return retention;
+    }
+
+    /**
+     * @return instance for file, which is loaded if it is not registered
+     */
+    public IniFile get(File file) throws IOException {
+        String path = aliases.get(file);
+        if (path == null) {
+            path = file.getCanonicalPath();
+            if (aliases.size() >= MAX_ALIASES)
+                aliases.clear();
+            aliases.put(file, path);
+        }
+
+        for (;;) {
+            Entry e = entries.get(path);
+            if (e == null) {
+                expunge();
+                Entry n = new Entry(path, file);
+                e = entries.putIfAbsent(path, n);
+                if (e == null) {
+                    misses.incrementAndGet();
+                    return n.load();
+                }
+            }
+            IniFile ini = e.get();
+            if (ini != null) {
+                hits.incrementAndGet();
+                return ini;
+            }
+            entries.remove(path, e);
+        }
+    }
+
+    /**
+     * Loads files in parallel
+     * @return instances in order of files
+     * @throws IOException if some file can't be loaded, after all others
+     * are loaded
+     */
+    public List<IniFile> preload(Collection<File> files) throws IOException {
+        int threads = Math.max(1, Math.min(files.size(), Runtime.getRuntime().availableProcessors()));
+        ExecutorService pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "IniFile preload");
+                t.setDaemon(true);
+                return t;
+            }
+
+        });
+        try {
+            List<Future<IniFile>> loads = new ArrayList<Future<IniFile>>(files.size());
+            for (final File f : files) {
+                loads.add(pool.submit(new Callable<IniFile>() {
+
+                    public IniFile call() throws IOException {
+                        return get(f);
+                    }
+
+                }));
+            }
+            List<IniFile> r = new ArrayList<IniFile>(loads.size());
+            IOException failure = null;
+            for (Future<IniFile> l : loads) {
+                try {
+                    r.add(IniFileRegistry.<IniFile>result(l));
+                } catch (IOException ex) {
+                    if (failure == null)
+                        failure = ex;
+                    else
+                        failure.addSuppressed(ex);
+                }
+            }
+            if (failure != null)
+                throw failure;
+            return r;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static <T> T result(Future<T> f) throws IOException {
+        boolean interrupted = false;
+        try {
+            for (;;) {
+                try {
+                    return f.get();
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                } catch (ExecutionException ex) {
+                    Throwable c = ex.getCause();
+                    if (c instanceof IOException)
+                        throw (IOException) c;
+                    if (c instanceof RuntimeException)
+                        throw (RuntimeException) c;
+                    if (c instanceof Error)
+                        throw (Error) c;
+                    throw new IOException(c);
+                }
+            }
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return number of registered files, including evicted ones, which
+     * are still retained
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Forgets all instances, they are not saved
+     */
+    public void clear() {
+        for (Entry e : entries.values())
+            e.discard();
+        entries.clear();
+        aliases.clear();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of loads
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return total time spent by loads
+     */
+    public long getLoadTimeNanos() {
+        return loadTime.get();
+    }
+
+    /**
+     * @return number of instances, which have been evicted from strongly
+     * reachable set
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public void resetStats() {
+        hits.set(0);
+        misses.set(0);
+        loadTime.set(0);
+        evictions.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "IniFileRegistry{size=" + size() + ", hits=" + getHits() + ", misses=" + getMisses() + ", loadTimeNanos=" + getLoadTimeNanos() + ", evictions=" + getEvictions() + '}';
+    }
+
+    /**
+     * Removes entries, which instances have been collected
+     */
+    private void expunge() {
+        Reference<? extends IniFile> r;
+        while ((r = cleared.poll()) != null) {
+            Entry e = r instanceof Ref ? ((Ref) r).entry : ((WeakRef) r).entry;
+            if (e.isCollected())
+                entries.remove(e.path, e);
+        }
+    }
+
+    /**
+     * Evicts least recently used clean instances above max size
+     */
+    private void evict() {
+        synchronized (evictionLock) {
+            int excess = strongCount.get() - maxSize;
+            if (excess <= 0)
+                return;
+            List<Entry> candidates = new ArrayList<Entry>();
+            for (Entry e : entries.values())
+                if (e.strong != null)
+                    candidates.add(e);
+            Collections.sort(candidates, new Comparator<Entry>() {
+
+                public int compare(Entry a, Entry b) {
+                    long d = a.lastAccess - b.lastAccess;
+                    return d < 0 ? -1 : d > 0 ? 1 : 0;
+                }
+
+            });
+            for (int i = 0; i < candidates.size() && excess > 0; i++) {
+                Entry e = candidates.get(i);
+                if (e.demote()) {
+                    excess--;
+                    evictions.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    private static final class Ref extends SoftReference<IniFile> {
+
+        final Entry entry;
+
+        Ref(IniFile ini, ReferenceQueue<IniFile> q, Entry entry) {
+            super(ini, q);
+            this.entry = entry;
+        }
+
+    }
+
+    private static final class WeakRef extends WeakReference<IniFile> {
+
+        final Entry entry;
+
+        WeakRef(IniFile ini, ReferenceQueue<IniFile> q, Entry entry) {
+            super(ini, q);
+            this.entry = entry;
+        }
+
+    }
+
+    /**
+     * Registered file, which instance is loaded by the first thread, which
+     * requests it. Instance is held only by {@link #strong} and
+     * {@link #ref}, so evicted instance can be collected.
+     */
+    final class Entry {
+
+        final String path;
+        private final File file;
+        private final CountDownLatch loaded = new CountDownLatch(1);
+        /**
+         * IOException, RuntimeException or Error, which has failed load
+         */
+        private volatile Throwable failure = null;
+        volatile IniFile strong = null;
+        private volatile Reference<IniFile> ref = null;
+        volatile long lastAccess = System.nanoTime();
+
+        Entry(String path, File file) {
+            this.path = path;
+            this.file = file;
+        }
+
+        /**
+         * Run by thread, which has registered entry
+         */
+        IniFile load() throws IOException {
+            try {
+                long start = System.nanoTime();
+                IniFile ini = new IniFile(file);
+                loadTime.addAndGet(System.nanoTime() - start);
+                ref = retention == Retention.SOFT ? new Ref(ini, cleared, this) : new WeakRef(ini, cleared, this);
+                ini.registryEntry = this;
+                promote(ini);
+                return ini;
+            } catch (IOException ex) {
+                throw failed(ex);
+            } catch (RuntimeException ex) {
+                throw failed(ex);
+            } catch (Error ex) {
+                throw failed(ex);
+            } finally {
+                loaded.countDown();
+            }
+        }
+
+        private <X extends Throwable> X failed(X ex) {
+            failure = ex;
+            entries.remove(path, this);
+            return ex;
+        }
+
+        /**
+         * Waits for load, entry is removed if load fails, so next request
+         * tries again
+         */
+        private void await() throws IOException {
+            boolean interrupted = false;
+            try {
+                for (;;) {
+                    try {
+                        loaded.await();
+                        break;
+                    } catch (InterruptedException ex) {
+                        interrupted = true;
+                    }
+                }
+            } finally {
+                if (interrupted)
+                    Thread.currentThread().interrupt();
+            }
+            Throwable c = failure;
+            if (c instanceof IOException)
+                throw (IOException) c;
+            if (c instanceof RuntimeException)
+                throw (RuntimeException) c;
+            if (c instanceof Error)
+                throw (Error) c;
+        }
+
+        /**
+         * @return instance, or null if it has been evicted and collected
+         */
+        IniFile get() throws IOException {
+            IniFile ini = strong;
+            if (ini != null) {
+                lastAccess = System.nanoTime();
+                return ini;
+            }
+            await();
+            ini = ref.get();
+            if (ini != null)
+                promote(ini);
+            return ini;
+        }
+
+        /**
+         * Makes instance strongly reachable again, after it has been used or
+         * modified
+         */
+        void promote(IniFile ini) {
+            lastAccess = System.nanoTime();
+            boolean promoted;
+            synchronized (this) {
+                promoted = strong == null;
+                strong = ini;
+            }
+            if (promoted && strongCount.incrementAndGet() > maxSize)
+                evict();
+        }
+
+        /**
+         * @return true if clean instance is not strongly reachable anymore
+         */
+        synchronized boolean demote() {
+            IniFile ini = strong;
+            if (ini == null || ini.isModified())
+                return false;
+            strong = null;
+            strongCount.decrementAndGet();
+            return true;
+        }
+
+        synchronized void discard() {
+            if (strong != null) {
+                strong.registryEntry = null;
+                strong = null;
+                strongCount.decrementAndGet();
+            }
+            Reference<IniFile> r = ref;
+            IniFile ini = r == null ? null : r.get();
+            if (ini != null)
+                ini.registryEntry = null;
+        }
+
+        boolean isCollected() {
+            Reference<IniFile> r = ref;
+            return strong == null && r != null && r.get() == null;
+        }
+
+    }
+
+}
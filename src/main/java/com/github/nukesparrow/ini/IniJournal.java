@@ -0,0 +1,282 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Append only log of changes made to {@link IniFile} since its base file has
+ * been written.
+ *
+ * Records are text lines of tab separated escaped fields, which hold current
+ * state of changed item:
+ * <pre>
+ * E section key value [comment]    entry is set
+ * R section key                    entry is removed
+ * S section [comment]              section is created or its comment is set
+ * </pre>
+ * Top level section name is empty. Records are idempotent, so key changed
+ * many times before append is written once. The first line holds checksum
+ * of base file, journal is ignored if base file has been replaced since.
+ *
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+final class IniJournal {
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String HEADER = "#ini-journal ";
+
+    private final File file;
+    private volatile long length;
+
+    /**
+     * Changed items since last append, value is true if entry has been
+     * removed in between
+     */
+    private final LinkedHashMap<Change, Boolean> pending = new LinkedHashMap<Change, Boolean>();
+    private boolean bulk = false;
+
+    IniJournal(File base) {
+        this.file = new File(base.getPath() + ".journal");
+        this.length = file.length();
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    long length() {
+        return length;
+    }
+
+    void entryChanged(String section, String key, boolean removed) {
+        if (bulk)
+            return;
+        Change c = new Change(section, key);
+        Boolean r = pending.get(c);
+        pending.put(c, removed || (r != null && r));
+    }
+
+    void sectionChanged(String section) {
+        if (!bulk)
+            pending.put(new Change(section, null), Boolean.FALSE);
+    }
+
+    /**
+     * Marks, that changes can't be recorded and base file has to be rewritten
+     */
+    void changedInBulk() {
+        bulk = true;
+        pending.clear();
+    }
+
+    boolean isBulk() {
+        return bulk;
+    }
+
+    /**
+     * Takes records of pending changes, should be called while ini is
+     * locked
+     * @param checksum checksum of base file, written if journal is empty
+     * @return records to {@link #append(byte[])}, or null if there is
+     * nothing to append
+     */
+    byte[] records(Ini ini, long checksum) {
+        if (bulk)
+            throw new IllegalStateException("Base file has to be rewritten");
+        if (pending.isEmpty())
+            return null;
+
+        StringBuilder b = new StringBuilder();
+        if (length == 0 || !file.exists())
+            b.append(HEADER).append(Long.toHexString(checksum)).append('\n');
+        for (Iterator<Map.Entry<Change, Boolean>> i = pending.entrySet().iterator(); i.hasNext();) {
+            Map.Entry<Change, Boolean> p = i.next();
+            record(b, ini, p.getKey(), p.getValue());
+        }
+        pending.clear();
+        return b.toString().getBytes(UTF8);
+    }
+
+    /**
+     * Appends records, appends are serialized by caller. Incomplete record,
+     * which has been skipped by {@link #replay(Ini, long)}, is truncated
+     * first.
+     * @return journal stream, which caller should sync if necessary and
+     * close
+     */
+    FileOutputStream append(byte[] data) throws IOException {
+        FileOutputStream out = new FileOutputStream(file, length != 0);
+        try {
+            if (length != 0 && out.getChannel().size() > length)
+                out.getChannel().truncate(length);
+            out.write(data);
+        } catch (IOException ex) {
+            out.close();
+            throw ex;
+        }
+        length = length == 0 ? data.length : length + data.length;
+        return out;
+    }
+
+    private static void record(StringBuilder b, Ini ini, Change c, boolean removed) {
+        Ini.Section s = ini.section(c.section, false);
+        if (c.key == null) {
+            if (s == null)
+                return;
+            b.append('S');
+            field(b, c.section);
+            if (s.getComment() != null)
+                field(b, s.getComment());
+            b.append('\n');
+            return;
+        }
+
+        boolean set = s != null && s.isSet(c.key);
+        if (removed || !set) {
+            b.append('R');
+            field(b, c.section);
+            field(b, c.key);
+            b.append('\n');
+        }
+        if (set) {
+            b.append('E');
+            field(b, c.section);
+            field(b, c.key);
+            field(b, s.get(c.key));
+            if (s.getComment(c.key) != null)
+                field(b, s.getComment(c.key));
+            b.append('\n');
+        }
+    }
+
+    private static void field(StringBuilder b, String value) {
+        b.append('\t');
+        if (value != null)
+            IniStringUtil.escape(value, b);
+    }
+
+    /**
+     * Deletes journal, after its changes have been written to base file
+     */
+    void reset() {
+        pending.clear();
+        bulk = false;
+        if (file.exists() && !file.delete())
+            file.deleteOnExit();
+        length = 0;
+    }
+
+    /**
+     * Applies journal records to ini, read from base file with given
+     * checksum. Incomplete last record, left by interrupted append, is
+     * ignored, and next append overwrites it.
+     * @return false if journal doesn't belong to base file
+     */
+    boolean replay(Ini ini, long checksum) throws IOException {
+        byte[] data = readAll(file);
+        int end = data.length - 1;
+        while (end >= 0 && data[end] != '\n')
+            end--;
+        if (end == -1)
+            return false;
+        String[] lines = new String(data, 0, end, UTF8).split("\n");
+        if (!lines[0].equals(HEADER + Long.toHexString(checksum)))
+            return false;
+        length = end + 1;
+
+        for (int i = 1; i < lines.length; i++) {
+            String[] f = lines[i].split("\t", -1);
+            for (int j = 1; j < f.length; j++)
+                f[j] = IniStringUtil.unescape(f[j]);
+            String section = f.length > 1 ? f[1] : null;
+            if (f[0].equals("E") && (f.length == 4 || f.length == 5)) {
+                ini.section(section, true).set(f[2], f[3], f.length == 5 ? f[4] : null);
+            } else if (f[0].equals("R") && f.length == 3) {
+                Ini.Section s = ini.section(section, false);
+                if (s != null)
+                    s.remove(f[2]);
+            } else if (f[0].equals("S") && (f.length == 2 || f.length == 3)) {
+                ini.section(section, true).setComment(f.length == 3 ? f[2] : null);
+            } else {
+                throw new IOException("Bad journal record at line " + (i + 1) + ": " + file);
+            }
+        }
+        return true;
+    }
+
+    static long checksum(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        if (file.exists())
+            crc.update(readAll(file));
+        return crc.getValue();
+    }
+
+    static byte[] readAll(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] b = new byte[(int) file.length()];
+            int n = 0;
+            int r;
+            while (n < b.length && (r = in.read(b, n, b.length - n)) >= 0)
+                n += r;
+            if (n < b.length) {
+                byte[] t = new byte[n];
+                System.arraycopy(b, 0, t, 0, n);
+                b = t;
+            }
+            return b;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static final class Change {
+
+        final String section;
+        final String key;
+
+        Change(String section, String key) {
+            this.section = section;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Change))
+                return false;
+            Change c = (Change) o;
+            return (section == null ? c.section == null : section.equals(c.section))
+                    && (key == null ? c.key == null : key.equals(c.key));
+        }
+
+        @Override
+        public int hashCode() {
+            return (section == null ? 0 : section.hashCode()) * 31 + (key == null ? 0 : key.hashCode());
+        }
+
+    }
+
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini;
+
+/**
+ * Handle of single key, which caches its decoded value.
+ *
+ * Handle is created once and read many times. Read checks
+ * {@link Ini#getVersion()}, and returns cached value if Ini has not been
+ * changed since, so it costs one volatile read. After change the section is
+ * looked up again, and value is decoded only if its section has been
+ * changed, by {@link Ini.Section#getVersion()}.
+ *
+ * <pre>
+ * static final IniKey&lt;Integer&gt; POOL_SIZE = IniKey.ofInt(ini, "db", "poolSize", 10);
+ * ...
+ * int poolSize = POOL_SIZE.get();
+ * </pre>
+ *
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+public abstract class IniKey<T> {
+
+    public static IniKey<String> ofString(Ini ini, String section, final String key, final String def) {
+        return new IniKey<String>(ini, section, key, def) {
+
+            @Override
+            String decode(Ini.Section s) {
+                return s.get(key, def);
+            }
+
+        };
+    }
+
+    public static IniKey<Integer> ofInt(Ini ini, String section, final String key, final int def) {
+        return new IniKey<Integer>(ini, section, key, def) {
+
+            @Override
+            Integer decode(Ini.Section s) {
+                return s.get(key, def);
+            }
+
+        };
+    }
+
+    public static IniKey<Long> ofLong(Ini ini, String section, final String key, final long def) {
+        return new IniKey<Long>(ini, section, key, def) {
+
+            @Override
+            Long decode(Ini.Section s) {
+                return s.get(key, def);
+            }
+
+        };
+    }
+
+    public static IniKey<Boolean> ofBoolean(Ini ini, String section, final String key, final boolean def) {
+        return new IniKey<Boolean>(ini, section, key, def) {
+
+            @Override
+            Boolean decode(Ini.Section s) {
+                return s.get(key, def);
+            }
+
+        };
+    }
+
+    public static IniKey<Double> ofDouble(Ini ini, String section, final String key, final double def) {
+        return new IniKey<Double>(ini, section, key, def) {
+
+            @Override
+            Double decode(Ini.Section s) {
+                return s.get(key, def);
+            }
+
+        };
+    }
+
+    /**
+     * Value as of some version of Ini, immutable, so it is safely read
+     * without synchronization
+     */
+    private static final class Cached<T> {
+
+        final int version;
+        final Ini.Section section;
+        final int sectionVersion;
+        final T value;
+
+        Cached(int version, Ini.Section section, int sectionVersion, T value) {
+            this.version = version;
+            this.section = section;
+            this.sectionVersion = sectionVersion;
+            this.value = value;
+        }
+
+    }
+
+    final Ini ini;
+    final String section;
+    final String key;
+    final T def;
+    private Cached<T> cached = null;
+
+    IniKey(Ini ini, String section, String key, T def) {
+        if (ini == null || key == null)
+            throw new NullPointerException();
+        this.ini = ini;
+        this.section = "".equals(section) || "null".equals(section) ? null : section;
+        this.key = key;
+        this.def = def;
+    }
+
+    /**
+     * @return value decoded from existing section
+     */
+    abstract T decode(Ini.Section s);
+
+    public T get() {
+        Cached<T> c = cached;
+        int v = ini.getVersion();
+        if (c != null && c.version == v)
+            return c.value;
+        return resolve(v, c);
+    }
+
+    private T resolve(int v, Cached<T> c) {
+        Ini.Section s = ini.section(section, false);
+        int sv = s == null ? 0 : s.getVersion();
+        T value;
+        if (c != null && c.section == s && c.sectionVersion == sv)
+            value = c.value;
+        else
+            value = s == null ? def : decode(s);
+        cached = new Cached<T>(v, s, sv, value);
+        return value;
+    }
+
+    public void set(T value) {
+        ini.section(section, true).set(key, value);
+    }
+
+    public Ini getIni() {
+        return ini;
+    }
+
+    public String getSection() {
+        return section;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public T getDefault() {
+        return def;
+    }
+
+    @Override
+    public String toString() {
+        return (section == null ? "" : section) + '.' + key;
+    }
+
+}
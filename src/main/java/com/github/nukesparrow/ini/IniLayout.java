@@ -0,0 +1,344 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Byte ranges of sections in .ini file, which let file be saved by copying
+ * unchanged sections verbatim and writing only changed ones.
+ *
+ * Range of section starts with comment lines, which parser attaches to it,
+ * and ends where range of the next section starts, so copied ranges keep
+ * original formatting, comments and blank lines. The first range is top
+ * level section, comments after the last entry of file, which parser
+ * ignores, are kept as tail. Files with repeated sections are not split,
+ * every save writes them entirely.
+ *
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+final class IniLayout {
+
+    private static final class Span {
+
+        final String name;
+        Ini.IniSection section;
+        int version;
+        long start;
+        long end;
+        /**
+         * Comment attached to section header contains blank line, so it
+         * would be parsed differently right after empty top level section
+         */
+        boolean blankInComment;
+
+        Span(String name, long start) {
+            this.name = name;
+            this.start = start;
+        }
+
+    }
+
+    private final List<Span> spans = new ArrayList<Span>();
+    private long tailStart = 0;
+    private long tailEnd = 0;
+
+    private long fileLength = -1;
+    private long fileModified = -1;
+
+    private IniLayout() {
+    }
+
+    /**
+     * Remembers size and time of file, ranges are used only while file has
+     * not been changed by someone else
+     */
+    void stamp(File file) {
+        fileLength = file.length();
+        fileModified = file.lastModified();
+    }
+
+    /**
+     * Reads file into ini
+     * @return layout of file, with no ranges if file can't be split
+     */
+    static IniLayout read(File file, Ini ini, Charset charset, boolean lazyValues) throws IOException {
+        IniLayout l = new IniLayout();
+        if (!file.exists())
+            return l;
+        byte[] data = IniJournal.readAll(file);
+        Tracker t = new Tracker(ini, charset, l);
+        t.setLazyValues(lazyValues);
+        t.parse(data, 0, data.length);
+
+        long end = t.hasPendingComment() ? t.commentStart : data.length;
+        l.spans.get(l.spans.size() - 1).end = end;
+        l.tailStart = end;
+        l.tailEnd = data.length;
+
+        HashSet<String> names = new HashSet<String>();
+        for (int i = 0; i < l.spans.size(); i++) {
+            Span s = l.spans.get(i);
+            if ((i > 0 && s.name == null) || !names.add(s.name)) {
+                l.spans.clear();
+                return l;
+            }
+            s.section = (Ini.IniSection) ini.section(s.name, false);
+            s.version = s.section == null ? 0 : s.section.getVersion();
+        }
+        l.stamp(file);
+        return l;
+    }
+
+    /**
+     * Records where sections start while file is parsed
+     */
+    private static final class Tracker extends ByteIniParser {
+
+        private final IniLayout layout;
+        private int lineStart;
+        int commentStart;
+        private boolean blankInComment;
+
+        Tracker(Ini ini, Charset charset, IniLayout layout) {
+            super(ini, charset);
+            this.layout = layout;
+            layout.spans.add(new Span(null, 0));
+        }
+
+        @Override
+        public void parseLine(byte[] b, int s, int e) {
+            boolean pending = hasPendingComment();
+            lineStart = s;
+            super.parseLine(b, s, e);
+            if (!pending && hasPendingComment()) {
+                commentStart = s;
+                blankInComment = false;
+            }
+        }
+
+        @Override
+        void blankLine() {
+            if (hasPendingComment())
+                blankInComment = true;
+            super.blankLine();
+        }
+
+        @Override
+        void sectionStart(String name) {
+            if ("".equals(name) || "null".equals(name))
+                name = null;
+            int start = hasPendingComment() ? commentStart : lineStart;
+            layout.spans.get(layout.spans.size() - 1).end = start;
+            Span s = new Span(name, start);
+            s.blankInComment = hasPendingComment() && blankInComment;
+            layout.spans.add(s);
+            super.sectionStart(name);
+        }
+
+    }
+
+    /**
+     * Captures what has to be written: ranges of unchanged sections and
+     * snapshots of changed ones. Should be called while ini is locked, cost
+     * depends on size of changed sections only.
+     * @param source file, which ranges are copied from
+     */
+    Plan plan(Ini ini, File source) {
+        boolean copy = !spans.isEmpty() && source.length() == fileLength && source.lastModified() == fileModified;
+        IdentityHashMap<Ini.IniSection, Span> old = new IdentityHashMap<Ini.IniSection, Span>();
+        Span oldTop = null;
+        if (copy) {
+            oldTop = spans.get(0);
+            for (int i = 1; i < spans.size(); i++)
+                if (spans.get(i).section != null)
+                    old.put(spans.get(i).section, spans.get(i));
+        }
+
+        Plan p = new Plan(copy ? source : null);
+        Ini.Section top = ini.section(null, false);
+        boolean emptyTop;
+        if (oldTop != null && top == oldTop.section && (top == null || top.getVersion() == oldTop.version)) {
+            p.add(top, oldTop);
+            emptyTop = top == null; // parser creates top level section only for comment or entries
+        } else {
+            p.add(top, null);
+            emptyTop = top == null || (empty(top.getComment()) && top.properties().isEmpty());
+        }
+
+        for (Ini.Section section : ini.sections()) {
+            if (section.getName() == null)
+                continue;
+            Span o = old.get(section);
+            if (o != null && o.version == section.getVersion() && !(emptyTop && o.blankInComment))
+                p.add(section, o);
+            else
+                p.add(section, null);
+            emptyTop = false;
+        }
+        p.tail = copy && !emptyTop; // otherwise blank lines would attach tail to top level section
+        return p;
+    }
+
+    /**
+     * Part of file to write: range of unchanged section, or snapshot of
+     * changed one
+     */
+    private static final class Part {
+
+        final Ini.Section section;
+        final int version;
+        final Span old;
+        final IniSnapshot.SectionSnapshot snapshot;
+
+        Part(Ini.Section section, Span old) {
+            this.section = section;
+            this.version = section == null ? 0 : section.getVersion();
+            this.old = old;
+            this.snapshot = old != null || section == null ? null : ((Ini.AbstractSection) section).snapshot();
+        }
+
+    }
+
+    /**
+     * File contents captured by {@link #plan(Ini, File)}, which are written
+     * without lock
+     */
+    final class Plan {
+
+        private final File source;
+        private final List<Part> parts = new ArrayList<Part>();
+        private boolean tail;
+
+        private Plan(File source) {
+            this.source = source;
+        }
+
+        private void add(Ini.Section section, Span old) {
+            parts.add(new Part(section, old));
+        }
+
+        /**
+         * @return layout of written data
+         */
+        IniLayout write(FileOutputStream out, Charset charset) throws IOException {
+            FileInputStream in = source == null ? null : new FileInputStream(source);
+            try {
+                return write(in == null ? null : in.getChannel(), out, charset);
+            } finally {
+                if (in != null)
+                    in.close();
+            }
+        }
+
+        private IniLayout write(FileChannel in, FileOutputStream out, Charset charset) throws IOException {
+            FileChannel ch = out.getChannel();
+            Writer w = new BufferedWriter(new OutputStreamWriter(out, charset), IniWriter.BUFFER_SIZE);
+            IniLayout l = new IniLayout();
+
+            Part top = parts.get(0);
+            Span s = new Span(null, 0);
+            if (top.old != null) {
+                copy(in, top.old, ch, w, s);
+            } else {
+                IniWriter iw = new IniWriter(w);
+                if (top.snapshot != null)
+                    IniStringUtil.buildSection(iw, null, top.snapshot);
+                iw.end();
+                w.flush();
+                s.end = ch.position();
+            }
+            addSpan(l, s, top);
+
+            IniWriter iw = new IniWriter(w, true);
+            for (Part p : parts.subList(1, parts.size())) {
+                s = new Span(p.section.getName(), ch.position());
+                if (p.old != null) {
+                    copy(in, p.old, ch, w, s);
+                    s.blankInComment = p.old.blankInComment;
+                } else {
+                    IniStringUtil.buildSection(iw, s.name, p.snapshot);
+                    w.flush();
+                    s.end = ch.position();
+                }
+                addSpan(l, s, p);
+            }
+
+            l.tailStart = ch.position();
+            if (tail)
+                transfer(in, tailStart, tailEnd, ch);
+            l.tailEnd = ch.position();
+            w.flush();
+            return l;
+        }
+
+    }
+
+    private static boolean empty(String comment) {
+        return comment == null || comment.isEmpty();
+    }
+
+    private static void addSpan(IniLayout l, Span s, Part p) {
+        if (p.section instanceof Ini.IniSection) {
+            s.section = (Ini.IniSection) p.section;
+            s.version = p.version;
+        }
+        l.spans.add(s);
+    }
+
+    /**
+     * Copies range of old span, line terminator is added if range doesn't
+     * end with one, so following data starts on new line
+     */
+    private static void copy(FileChannel in, Span from, FileChannel ch, Writer w, Span to) throws IOException {
+        w.flush();
+        to.start = ch.position();
+        transfer(in, from.start, from.end, ch);
+        if (from.end > from.start) {
+            ByteBuffer b = ByteBuffer.allocate(1);
+            in.read(b, from.end - 1);
+            byte last = b.get(0);
+            if (last != '\n' && last != '\r') {
+                w.write('\n');
+                w.flush();
+            }
+        }
+        to.end = ch.position();
+    }
+
+    private static void transfer(FileChannel in, long start, long end, FileChannel ch) throws IOException {
+        while (start < end) {
+            long n = in.transferTo(start, end - start, ch);
+            if (n <= 0)
+                throw new IOException("Source file has been truncated");
+            start += n;
+        }
+    }
+
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini;
+
+import com.github.nukesparrow.virtfs.VFilesystem;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Object, which is kept loaded from section or Ini. Changes are applied on
+ * thread, which has changed Ini, right after change, or once after
+ * transaction, or once after {@link IniFile} has merged changes from disk.
+ * Only keys, which values have changed, are set again, and they
+ * are set while object's monitor is held, so readers, which synchronize on
+ * object, see all keys of one change at once. Reads of fields stay plain.
+ * Object's monitor is the only lock of binding, and listeners of Ini are
+ * run while no lock of Ini is held, so thread, which holds it, may change
+ * Ini.
+ * <p>
+ * Object is loaded by public fields and setters even if it has generated
+ * {@link IniBinder}, since binder loads all keys at once.
+ * <p>
+ * Properties, which are neither section nor Ini, are not watched, they are
+ * loaded by {@link #refresh()} only.
+ *
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ * @see IniUtil#bindLive(IniProperties, Object)
+ */
+public final class IniLiveBinding<T> {
+
+    private static final Logger LOG = Logger.getLogger(IniLiveBinding.class.getName());
+
+    /**
+     * Called after object is updated, on thread, which has changed Ini
+     */
+    public interface Listener<T> {
+
+        /**
+         * @param keys keys, which values have changed
+         */
+        void changed(T obj, Set<String> keys);
+
+    }
+
+    private final IniProperties properties;
+    private final T obj;
+    private final Listener<? super T> listener;
+    private final VFilesystem vfs;
+    private final IniUtil.Binding[] bindings;
+    /**
+     * Values, which were set last, by binding
+     */
+    private final String[] values;
+    private final Ini ini;
+    private final Runnable onChange = new Runnable() {
+
+        public void run() {
+            try {
+                refresh();
+            } catch (RuntimeException ex) {
+                LOG.log(Level.WARNING, "Unable to update " + obj.getClass().getName() + " from ini", ex);
+            }
+        }
+
+    };
+
+    /**
+     * Guarded by object's monitor, as {@link #values} are
+     */
+    private int version;
+    private boolean closed = false;
+
+    IniLiveBinding(IniProperties properties, T obj, Listener<? super T> listener, VFilesystem vfs) {
+        this.properties = properties;
+        this.obj = obj;
+        this.listener = listener;
+        this.vfs = vfs;
+        this.bindings = IniUtil.bindings(obj.getClass());
+        this.values = new String[bindings.length];
+
+        if (properties instanceof Ini.AbstractSection)
+            ini = ((Ini.AbstractSection) properties).ini();
+        else if (properties instanceof Ini)
+            ini = (Ini) properties;
+        else
+            ini = null;
+
+        synchronized (obj) {
+            version = IniUtil.version(properties);
+            update();
+        }
+        if (ini != null)
+            ini.addChangeListener(onChange);
+    }
+
+    public T get() {
+        return obj;
+    }
+
+    /**
+     * Sets keys, which have changed since last update, listener is called if
+     * any of them has.
+     *
+     * @return true if object has changed
+     */
+    public boolean refresh() {
+        Set<String> changed;
+        synchronized (obj) {
+            if (closed)
+                return false;
+            int v = IniUtil.version(properties);
+            if (ini != null && v == version)
+                return false;
+            version = v;
+            changed = update();
+        }
+        if (changed.isEmpty())
+            return false;
+        if (listener != null)
+            listener.changed(obj, Collections.unmodifiableSet(changed));
+        return true;
+    }
+
+    /**
+     * Stops updates of object, it keeps values, which were set last
+     */
+    public void close() {
+        synchronized (obj) {
+            if (closed)
+                return;
+            closed = true;
+        }
+        if (ini != null)
+            ini.removeChangeListener(onChange);
+    }
+
+    /**
+     * Called while object is locked. All values are converted before any is
+     * set, so object isn't changed if conversion fails. Removed keys keep
+     * their last values.
+     */
+    private Set<String> update() {
+        Object[] converted = new Object[bindings.length];
+        String[] read = new String[bindings.length];
+        Set<String> changed = new LinkedHashSet<String>();
+        for (int i = 0; i < bindings.length; i++) {
+            String value = properties.get(bindings[i].name);
+            if (value == null || value.equals(values[i]))
+                continue;
+            read[i] = value;
+            converted[i] = IniUtil.convert(bindings[i].type, value, vfs);
+        }
+        for (int i = 0; i < bindings.length; i++) {
+            if (read[i] == null)
+                continue;
+            bindings[i].set(obj, converted[i]);
+            values[i] = read[i];
+            changed.add(bindings[i].name);
+        }
+        return changed;
+    }
+
+}
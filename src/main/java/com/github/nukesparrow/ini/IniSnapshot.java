@@ -0,0 +1,512 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Immutable state of {@link Ini}, taken by {@link Ini#snapshot()}.
+ *
+ * Snapshot is safe to read from any thread without locking. Sections, which
+ * have not been changed since previous snapshot of the same Ini, are shared
+ * with it, so taking snapshot costs copy of changed sections only. Methods
+ * of {@link Ini.Section}, which modify section, throw
+ * {@link UnsupportedOperationException}.
+ *
+ * @see IniSnapshotHolder
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+public final class IniSnapshot implements IniProperties {
+
+    public static final IniSnapshot EMPTY = new IniSnapshot(0, 0, new SectionSnapshot[0]);
+
+    private final int version;
+    private final int revision;
+    private final SectionSnapshot[] sections;
+    private final HashMap<String, SectionSnapshot> byName;
+
+    IniSnapshot(int version, SectionSnapshot[] sections) {
+        this(version, 0, sections);
+    }
+
+    private IniSnapshot(int version, int revision, SectionSnapshot[] sections) {
+        this.version = version;
+        this.revision = revision;
+        this.sections = sections;
+        this.byName = new HashMap<String, SectionSnapshot>(sections.length * 2);
+        for (SectionSnapshot s : sections)
+            byName.put(s.name, s);
+    }
+
+    /**
+     * @return {@link Ini#getVersion()} at the moment snapshot has been taken,
+     * snapshots derived by {@link #set} and {@link #remove} keep it
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * @return number of changes made by {@link #set} and {@link #remove}
+     * since snapshot has been taken from Ini, 0 for snapshot of Ini itself
+     */
+    public int getRevision() {
+        return revision;
+    }
+
+    /**
+     * @return true if this snapshot is derived from later state of Ini than
+     * other one, or from the same state by more changes
+     */
+    boolean isNewerThan(IniSnapshot other) {
+        int d = version - other.version;
+        return d != 0 ? d > 0 : revision > other.revision;
+    }
+
+    public List<Ini.Section> sections() {
+        return Collections.unmodifiableList(Arrays.<Ini.Section>asList(sections));
+    }
+
+    /**
+     * @return section, empty one if it doesn't exist
+     */
+    public Ini.Section section(String sectionName) {
+        Ini.Section s = section(sectionName, false);
+        return s == null ? new SectionSnapshot(sectionName, 0, null, new EntrySnapshot[0]) : s;
+    }
+
+    /**
+     * @return section, or null if it doesn't exist and empty one is not
+     * requested
+     */
+    public Ini.Section section(String sectionName, boolean emptyIfMissing) {
+        if ("".equals(sectionName) || "null".equals(sectionName))
+            sectionName = null;
+        SectionSnapshot s = byName.get(sectionName);
+        return s != null || !emptyIfMissing ? s : section(sectionName);
+    }
+
+    /**
+     * @return copy of snapshot with entry set, which shares all other
+     * sections with this one and is labeled by the same version and next
+     * revision
+     */
+    public IniSnapshot set(String sectionName, String key, String value) {
+        if (value == null)
+            throw new NullPointerException();
+        return with(sectionName, key, value);
+    }
+
+    /**
+     * @return copy of snapshot without entry, or this snapshot if there is
+     * no such entry
+     * @see #set(java.lang.String, java.lang.String, java.lang.String)
+     */
+    public IniSnapshot remove(String sectionName, String key) {
+        Ini.Section s = section(sectionName, false);
+        return s == null || !s.isSet(key) ? this : with(sectionName, key, null);
+    }
+
+    private IniSnapshot with(String sectionName, String key, String value) {
+        if ("".equals(sectionName) || "null".equals(sectionName))
+            sectionName = null;
+        SectionSnapshot old = byName.get(sectionName);
+        SectionSnapshot changed = (old == null ? new SectionSnapshot(sectionName, 0, null, new EntrySnapshot[0]) : old).with(key, value);
+        SectionSnapshot[] a;
+        if (old == null) {
+            a = Arrays.copyOf(sections, sections.length + 1);
+            a[sections.length] = changed;
+        } else {
+            a = sections.clone();
+            for (int i = 0; i < a.length; i++)
+                if (a[i] == old)
+                    a[i] = changed;
+        }
+        return new IniSnapshot(version, revision + 1, a);
+    }
+
+    public String get(String key, String def) {
+        return section(null).get(key, def);
+    }
+
+    public byte get(String key, byte def) {
+        return section(null).get(key, def);
+    }
+
+    public short get(String key, short def) {
+        return section(null).get(key, def);
+    }
+
+    public int get(String key, int def) {
+        return section(null).get(key, def);
+    }
+
+    public long get(String key, long def) {
+        return section(null).get(key, def);
+    }
+
+    public boolean get(String key, boolean def) {
+        return section(null).get(key, def);
+    }
+
+    public float get(String key, float def) {
+        return section(null).get(key, def);
+    }
+
+    public double get(String key, double def) {
+        return section(null).get(key, def);
+    }
+
+    public Date get(String key, Date def) {
+        return section(null).get(key, def);
+    }
+
+    public boolean isSet(String key) {
+        return section(null).isSet(key);
+    }
+
+    public String get(String key) {
+        return section(null).get(key);
+    }
+
+    @Override
+    public String toString() {
+        return IniStringUtil.snapshotToString(this);
+    }
+
+    /**
+     * Takes snapshot of section, entries, which have not been changed since
+     * previous snapshot, keep their decoded values
+     * @param previous previous snapshot of the same section, or null
+     */
+    static SectionSnapshot snapshot(Ini.Section section, int version, SectionSnapshot previous) {
+        List<Ini.SectionEntry> properties = section.properties();
+        EntrySnapshot[] entries = new EntrySnapshot[properties.size()];
+        for (int i = 0; i < entries.length; i++) {
+            Ini.SectionEntry e = properties.get(i);
+            String value = e.getValue();
+            String comment = e.getComment();
+            EntrySnapshot p = previous == null ? null : previous.entries.get(e.getName());
+            if (p != null && p.value.equals(value) && (comment == null ? p.comment == null : comment.equals(p.comment)))
+                entries[i] = p;
+            else
+                entries[i] = new EntrySnapshot(null, e.getName(), value, comment, null);
+        }
+        return new SectionSnapshot(section.getName(), version, section.getComment(), entries);
+    }
+
+    static final class SectionSnapshot implements Ini.Section {
+
+        private final String name;
+        private final int version;
+        private final String comment;
+        private final EntrySnapshot[] order;
+        private final HashMap<String, EntrySnapshot> entries;
+
+        /**
+         * @param order entries, which are copied, so snapshots never share
+         * them
+         */
+        SectionSnapshot(String name, int version, String comment, EntrySnapshot[] order) {
+            this.name = name;
+            this.version = version;
+            this.comment = comment;
+            this.order = new EntrySnapshot[order.length];
+            this.entries = new HashMap<String, EntrySnapshot>(order.length * 2);
+            for (int i = 0; i < order.length; i++) {
+                EntrySnapshot e = order[i];
+                this.order[i] = e = new EntrySnapshot(this, e.name, e.value, e.comment, e.typed);
+                entries.put(e.name, e);
+            }
+        }
+
+        /**
+         * @param value new value, or null to remove entry
+         */
+        SectionSnapshot with(String key, String value) {
+            EntrySnapshot old = entries.get(key);
+            EntrySnapshot[] a;
+            if (value == null) {
+                a = new EntrySnapshot[order.length - 1];
+                int j = 0;
+                for (EntrySnapshot e : order)
+                    if (e != old)
+                        a[j++] = e;
+            } else if (old == null) {
+                a = Arrays.copyOf(order, order.length + 1);
+                a[order.length] = new EntrySnapshot(null, key, value, null, null);
+            } else {
+                a = order.clone();
+                for (int i = 0; i < a.length; i++)
+                    if (a[i] == old)
+                        a[i] = new EntrySnapshot(null, key, value, old.comment, null);
+            }
+            return new SectionSnapshot(name, version + 1, comment, a);
+        }
+
+        public int getVersion() {
+            return version;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getComment(String key) {
+            EntrySnapshot e = entries.get(key);
+            return e == null ? null : e.comment;
+        }
+
+        public String getComment() {
+            return comment;
+        }
+
+        public List<Ini.SectionEntry> properties() {
+            return Collections.unmodifiableList(Arrays.<Ini.SectionEntry>asList(order));
+        }
+
+        public Ini.SectionEntry getUnnamed(int index) {
+            return entries.get(Integer.toString(index + 1));
+        }
+
+        private int unnamedCount() {
+            try {
+                return Math.max(get("count", 0), 0);
+            } catch (NumberFormatException ex) {
+                return 0;
+            }
+        }
+
+        public List<String> unnamedList() {
+            return new AbstractList<String>() {
+
+                @Override
+                public String get(int index) {
+                    return getUnnamed(index).getValue();
+                }
+
+                @Override
+                public int size() {
+                    return unnamedCount();
+                }
+
+            };
+        }
+
+        public String getUnnamedComment() {
+            return getComment("count");
+        }
+
+        public int[] unnamedInts() {
+            int[] r = new int[unnamedCount()];
+            for (int i = 0; i < r.length; i++) {
+                EntrySnapshot e = (EntrySnapshot) getUnnamed(i);
+                if (e != null)
+                    r[i] = e.intValue(0);
+            }
+            return r;
+        }
+
+        public long[] unnamedLongs() {
+            long[] r = new long[unnamedCount()];
+            for (int i = 0; i < r.length; i++) {
+                EntrySnapshot e = (EntrySnapshot) getUnnamed(i);
+                if (e != null)
+                    r[i] = e.longValue(0);
+            }
+            return r;
+        }
+
+        public String get(String key, String def) {
+            EntrySnapshot e = entries.get(key);
+            return e == null ? def : e.value;
+        }
+
+        public byte get(String key, byte def) {
+            EntrySnapshot e = entries.get(key);
+            return e == null || e.value.isEmpty() ? def : Byte.parseByte(e.value);
+        }
+
+        public short get(String key, short def) {
+            EntrySnapshot e = entries.get(key);
+            return e == null || e.value.isEmpty() ? def : Short.parseShort(e.value);
+        }
+
+        public int get(String key, int def) {
+            EntrySnapshot e = entries.get(key);
+            return e == null ? def : e.intValue(def);
+        }
+
+        public long get(String key, long def) {
+            EntrySnapshot e = entries.get(key);
+            return e == null ? def : e.longValue(def);
+        }
+
+        public boolean get(String key, boolean def) {
+            EntrySnapshot e = entries.get(key);
+            return e == null || e.value.isEmpty() ? def : Boolean.parseBoolean(e.value);
+        }
+
+        public float get(String key, float def) {
+            EntrySnapshot e = entries.get(key);
+            return e == null || e.value.isEmpty() ? def : Float.parseFloat(e.value);
+        }
+
+        public double get(String key, double def) {
+            EntrySnapshot e = entries.get(key);
+            return e == null || e.value.isEmpty() ? def : Double.parseDouble(e.value);
+        }
+
+        public Date get(String key, Date def) {
+            EntrySnapshot e = entries.get(key);
+            return e == null || e.value.isEmpty() ? def : new Date(e.value);
+        }
+
+        public boolean isSet(String key) {
+            return entries.containsKey(key);
+        }
+
+        public String get(String key) {
+            EntrySnapshot e = entries.get(key);
+            return e == null ? null : e.value;
+        }
+
+        public void set(String key, Object value) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void set(String key, Object value, String comment) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void setComment(String key, String comment) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void setComment(String comment) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void remove(String key) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void setUnnamedComment(String comment) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void setUnnamed(String[] elems) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String toString() {
+            return entries.toString();
+        }
+
+    }
+
+    static final class EntrySnapshot implements Ini.SectionEntry {
+
+        private final String name;
+        private final String value;
+        private final String comment;
+        /**
+         * Section snapshot, which contains entry, null until entry is copied
+         * into it
+         */
+        private final SectionSnapshot section;
+        /**
+         * Decoded value, cached by racy single check, as instances are
+         * immutable
+         */
+        private Ini.Typed typed;
+
+        EntrySnapshot(SectionSnapshot section, String name, String value, String comment, Ini.Typed typed) {
+            this.section = section;
+            this.name = name;
+            this.value = value;
+            this.comment = comment;
+            this.typed = typed;
+        }
+
+        public Ini.Section getSection() {
+            return section;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public String getComment() {
+            return comment;
+        }
+
+        public void setValue(String value) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void setComment(String comment) {
+            throw new UnsupportedOperationException();
+        }
+
+        public boolean isUnnamed() {
+            int n = Ini.elementNumber(name);
+            if (n == 0)
+                return "count".equals(name);
+            SectionSnapshot s = section;
+            return s != null && n <= s.unnamedCount();
+        }
+
+        int intValue(int def) {
+            Ini.Typed t = typed;
+            if (t != null && t.value instanceof Integer)
+                return (Integer) t.value;
+            if (value.isEmpty())
+                return def;
+            Integer r = Integer.valueOf(value);
+            typed = new Ini.Typed(value, r);
+            return r;
+        }
+
+        long longValue(long def) {
+            Ini.Typed t = typed;
+            if (t != null && t.value instanceof Long)
+                return (Long) t.value;
+            if (value.isEmpty())
+                return def;
+            Long r = Long.valueOf(value);
+            typed = new Ini.Typed(value, r);
+            return r;
+        }
+
+        @Override
+        public String toString() {
+            return value;
+        }
+
+    }
+
+}
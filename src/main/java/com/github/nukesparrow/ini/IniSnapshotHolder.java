@@ -0,0 +1,106 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Current {@link IniSnapshot}, which readers get by single volatile read
+ * and writers replace atomically.
+ *
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+public class IniSnapshotHolder {
+
+    private final AtomicReference<IniSnapshot> current;
+
+    public IniSnapshotHolder() {
+        this(IniSnapshot.EMPTY);
+    }
+
+    public IniSnapshotHolder(IniSnapshot initial) {
+        if (initial == null)
+            throw new NullPointerException();
+        this.current = new AtomicReference<IniSnapshot>(initial);
+    }
+
+    public IniSnapshot get() {
+        return current.get();
+    }
+
+    public void set(IniSnapshot snapshot) {
+        if (snapshot == null)
+            throw new NullPointerException();
+        current.set(snapshot);
+    }
+
+    public boolean compareAndSet(IniSnapshot expect, IniSnapshot update) {
+        if (update == null)
+            throw new NullPointerException();
+        return current.compareAndSet(expect, update);
+    }
+
+    /**
+     * Publishes snapshot of ini, unless newer snapshot has been published
+     * already, so concurrent publishers never replace newer state with
+     * older one. Snapshots are compared by version of Ini, and then by
+     * revision, so changes made by {@link #set(String, String, String)}
+     * are kept until Ini changes.
+     * @return published snapshot
+     */
+    public IniSnapshot publish(Ini ini) {
+        IniSnapshot s = ini.snapshot();
+        for (;;) {
+            IniSnapshot c = current.get();
+            if (c == s || c.isNewerThan(s))
+                return c;
+            if (current.compareAndSet(c, s))
+                return s;
+        }
+    }
+
+    /**
+     * Sets entry of current snapshot, retrying if other writer publishes
+     * snapshot in between
+     * @return published snapshot
+     */
+    public IniSnapshot set(String section, String key, String value) {
+        for (;;) {
+            IniSnapshot c = current.get();
+            IniSnapshot n = c.set(section, key, value);
+            if (current.compareAndSet(c, n))
+                return n;
+        }
+    }
+
+    /**
+     * @see #set(java.lang.String, java.lang.String, java.lang.String)
+     */
+    public IniSnapshot remove(String section, String key) {
+        for (;;) {
+            IniSnapshot c = current.get();
+            IniSnapshot n = c.remove(section, key);
+            if (n == c || current.compareAndSet(c, n))
+                return n;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return get().toString();
+    }
+
+}
@@ -15,10 +15,19 @@
  */
 package com.github.nukesparrow.ini;
 
+import com.github.nukesparrow.util.StreamUtils;
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringReader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 import java.util.HashSet;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -31,15 +40,15 @@ public class IniStringUtil {
     //<editor-fold defaultstate="collapsed" desc="Escaping routines">
     private static final char[] HEXCHARS = "0123456789ABCDEF".toCharArray();
     
-    private static void escapeSection(Appendable a, String str) throws IOException {
+    static void escapeSection(Appendable a, String str) throws IOException {
         escape(a, str, true, false);
     }
     
-    private static void escapeKey(Appendable a, String str) throws IOException {
+    static void escapeKey(Appendable a, String str) throws IOException {
         escape(a, str, false, true);
     }
     
-    private static void escapeValue(Appendable a, String str) throws IOException {
+    static void escapeValue(Appendable a, String str) throws IOException {
         escape(a, str, false, false);
     }
     
@@ -49,95 +58,178 @@ public class IniStringUtil {
         a.append(HEXCHARS[c & 0xF]);
     }
     
+    private static boolean needsEscape(char c, int i, int length, boolean section, boolean key) {
+        switch (c) {
+            case '%':
+            case '\t':
+            case '\r':
+            case '\n':
+            case '+':
+                return true;
+            case ']':
+                return section;
+            case '=':
+                return key;
+            case ' ':
+                return i == 0 || i == (length - 1);
+            default:
+                return false;
+        }
+    }
+
+    private static void append(Appendable a, String str, int start, int end) throws IOException {
+        if (a instanceof Writer)
+            ((Writer) a).write(str, start, end - start); // Writer.append(CharSequence, int, int) allocates substring
+        else
+            a.append(str, start, end);
+    }
+
     private static void escape(Appendable a, String str, boolean section, boolean key) throws IOException {
-        for (int i = 0; i < str.length(); i++) {
+        int l = str.length();
+        int run = 0;
+        for (int i = 0; i < l; i++) {
             char c = str.charAt(i);
-            switch (c) {
-                case '%':
-                case '\t':
-                case '\r':
-                case '\n':
-                case '+':
-                    escape(a, c);
-                    break;
-                case ']':
-                    if (section)
-                        escape(a, c);
-                    else
-                        a.append(c);
-                    break;
-                case '=':
-                    if (key)
-                        escape(a, c);
-                    else
-                        a.append(c);
-                    break;
-                case ' ':
-                    if (i == 0 || i == (str.length()-1))
-                        a.append('+');
-                    else
-                        a.append(' ');
-                    break;
-                default:
-                    a.append(c);
-            }
+            if (!needsEscape(c, i, l, section, key))
+                continue;
+            if (run < i)
+                append(a, str, run, i);
+            if (c == ' ')
+                a.append('+');
+            else
+                escape(a, c);
+            run = i + 1;
         }
+        if (run < l)
+            append(a, str, run, l);
     }
     
     /**
      * Escapes string, that can be used in .ini file
      * @param str unescaped string
-     * @return Escaped value
+     * @return Escaped value, str itself if nothing needs escaping
      */
     public static String escape(String str) {
-        StringBuilder b = new StringBuilder(str.length());
+        int l = str.length();
+        for (int i = 0; i < l; i++) {
+            if (needsEscape(str.charAt(i), i, l, true, true)) {
+                StringBuilder b = new StringBuilder(l + 16);
+                escape(str, b);
+                return b.toString();
+            }
+        }
+        return str;
+    }
+
+    /**
+     * Appends escaped string to b
+     * @param str unescaped string
+     * @param b destination
+     */
+    public static void escape(String str, StringBuilder b) {
         try {
             escape(b, str, true, true);
         } catch (IOException shouldNeverHappen) {
         }
-        return b.toString();
     }
 
     /**
      * Unescapes string, that can be used in .ini file
      * @param str escaped string
-     * @return Unescaped value
+     * @return Unescaped value, str itself if it contains no escapes
      */
     public static String unescape(String str) {
-        StringBuilder b = new StringBuilder(str.length());
-        int i = 0;
         int l = str.length();
-        while (l > 0) {
+        int i = 0;
+        while (i < l) {
+            char c = str.charAt(i);
+            if (c == '%' || c == '+')
+                break;
+            i++;
+        }
+        if (i == l)
+            return str;
+        char[] b = new char[l];
+        str.getChars(0, i, b, 0);
+        return new String(b, 0, unescape(str, i, l, b, i));
+    }
+
+    /**
+     * Unescapes characters start..end of str into dst. Unescaped text is
+     * never longer than escaped, so dst needs end - start chars from off.
+     * @return dst offset after last written char
+     */
+    public static int unescape(CharSequence str, int start, int end, char[] dst, int off) {
+        int i = start;
+        while (i < end) {
             char c = str.charAt(i);
             if (c == '+') {
-                b.append(' ');
+                dst[off++] = ' ';
                 i++;
-                l--;
-            } else {
-                if (l >= 3 && c == '%') {
-                    try {
-                        b.append((char)Short.parseShort(str.substring(i + 1, i + 3), 16));
-                        i+=3;
-                        l-=3;
-                    } catch (NumberFormatException ex) {
-                        b.append(c);
-                        i++;
-                        l--;
-                    }
+            } else if (c == '%' && end - i >= 3) {
+                int v = unhex(str.charAt(i + 1), str.charAt(i + 2));
+                if (v == BAD_ESCAPE) {
+                    dst[off++] = c;
+                    i++;
                 } else {
-                    b.append(c);
+                    dst[off++] = (char) v;
+                    i += 3;
+                }
+            } else {
+                dst[off++] = c;
+                i++;
+            }
+        }
+        return off;
+    }
+
+    /**
+     * Appends unescaped characters start..end of str to b
+     */
+    public static void unescape(CharSequence str, int start, int end, StringBuilder b) {
+        int i = start;
+        int run = start;
+        while (i < end) {
+            char c = str.charAt(i);
+            if (c == '+') {
+                b.append(str, run, i).append(' ');
+                run = ++i;
+            } else if (c == '%' && end - i >= 3) {
+                int v = unhex(str.charAt(i + 1), str.charAt(i + 2));
+                if (v == BAD_ESCAPE) {
                     i++;
-                    l--;
+                } else {
+                    b.append(str, run, i).append((char) v);
+                    run = i += 3;
                 }
+            } else {
+                i++;
             }
         }
-        b.trimToSize();
-        return b.toString();
+        b.append(str, run, end);
+    }
+
+    static final int BAD_ESCAPE = Integer.MIN_VALUE;
+
+    /**
+     * Decodes two characters following '%' exactly as
+     * {@code Short.parseShort(hi + lo, 16)} would, without allocating
+     * @return decoded value or {@link #BAD_ESCAPE}
+     */
+    static int unhex(char hi, char lo) {
+        int l = Character.digit(lo, 16);
+        if (l < 0)
+            return BAD_ESCAPE;
+        if (hi == '-')
+            return -l;
+        if (hi == '+')
+            return l;
+        int h = Character.digit(hi, 16);
+        return h < 0 ? BAD_ESCAPE : (h << 4) | l;
     }
     //</editor-fold>
 
     //<editor-fold defaultstate="collapsed" desc="Text .ini file building routines">
-    private static void buildComment(Appendable a, String comment, boolean newLine) throws IOException {
+    static void buildComment(Appendable a, String comment, boolean newLine) throws IOException {
         if (newLine)
             a.append('\n');
         if (comment == null || comment.isEmpty())
@@ -145,27 +237,8 @@ public class IniStringUtil {
         a.append("#").append(comment.trim().replaceAll("\\r?\\n", "\n#")).append("\n");
     }
     
-    private static void buildEntry(Appendable a, String name, Ini.SectionEntry entry) throws IOException {
-        buildComment(a, entry.getComment(), false);
-        if (name == null) {
-            escapeKey(a, entry.getValue());
-        } else {
-            escapeKey(a, name);
-            a.append('=');
-            escapeValue(a, entry.getValue());
-        }
-        a.append('\n');
-    }
-    
-    private static void buildSection(Appendable a, String name, Ini.Section section) throws IOException {
-        buildComment(a, section.getComment(), name != null);
-        if (name == null) {
-            a.append('\n');
-        } else {
-            a.append('[');
-            escapeSection(a, name);
-            a.append("]\n\n");
-        }
+    static void buildSection(IniWriter w, String name, Ini.Section section) throws IOException {
+        w.section(name, section.getComment());
         HashSet<String> skip = null;
         if (section.isSet("count")) {
             skip = new HashSet<String>();
@@ -181,14 +254,15 @@ public class IniStringUtil {
             }
             if (skip != null) {
                 for (int i = 0; i < cnt; i++) {
-                    buildEntry(a, null, section.getUnnamed(i));
+                    Ini.SectionEntry entry = section.getUnnamed(i);
+                    w.unnamed(entry.getValue(), entry.getComment());
                 }
             }
         }
 
         for (Ini.SectionEntry entry : section.properties()) {
             if (skip==null||!skip.contains(entry.getName()))
-                buildEntry(a, entry.getName(), entry);
+                w.entry(entry.getName(), entry.getValue(), entry.getComment());
         }
 
     }
@@ -205,12 +279,32 @@ public class IniStringUtil {
     public static void buildIni(Appendable a, Ini ini) throws IOException {
         if (ini == null)
             return;
-        Ini.Section s = ini.section(null);
-        if (s != null)
-            buildSection(a, null, s);
-        for (Ini.Section section : ini.sections())
+        buildIni(a, ini.section(null), ini.sections());
+    }
+
+    public static String snapshotToString(IniSnapshot snapshot) {
+        StringBuilder b = new StringBuilder();
+        try {
+            buildIni(b, snapshot);
+        } catch (IOException shouldNeverHappen) {
+        }
+        return b.toString();
+    }
+
+    public static void buildIni(Appendable a, IniSnapshot snapshot) throws IOException {
+        if (snapshot == null)
+            return;
+        buildIni(a, snapshot.section(null), snapshot.sections());
+    }
+
+    private static void buildIni(Appendable a, Ini.Section top, List<Ini.Section> sections) throws IOException {
+        IniWriter w = new IniWriter(a);
+        if (top != null)
+            buildSection(w, null, top);
+        for (Ini.Section section : sections)
             if (section.getName() != null)
-                buildSection(a, section.getName(), section);
+                buildSection(w, section.getName(), section);
+        w.end();
     }
     //</editor-fold>
 
@@ -233,6 +327,59 @@ public class IniStringUtil {
         readIniAndCloseThen(r, ini);
         return ini;
     }
+
+    /**
+     * Parses UTF-8 data, large data is parsed in parallel by
+     * {@link ParallelIniParser}
+     */
+    public static Ini parseIni(ByteBuffer b) {
+        Ini ini = new Ini();
+        new ParallelIniParser(ini).parse(b);
+        return ini;
+    }
+
+    public static void readIniAndCloseThen(InputStream in, Ini ini, Charset charset) throws IOException {
+        new ByteIniParser(ini, charset).parse(ByteBuffer.wrap(StreamUtils.streamToByteArray(in, true)));
+    }
+
+    public static Ini readIniAndCloseThen(InputStream in) throws IOException {
+        Ini ini = new Ini();
+        readIniAndCloseThen(in, ini, ByteIniParser.UTF8);
+        return ini;
+    }
+
+    /**
+     * Reads whole file into heap buffer and parses it with {@link ByteIniParser},
+     * large files are parsed in parallel by {@link ParallelIniParser}.
+     * File is not memory mapped, because mapping keeps file locked on some
+     * platforms until buffer is collected, and {@link IniFile#save()} should
+     * be able to replace it.
+     */
+    public static void readIni(File file, Ini ini, Charset charset) throws IOException {
+        readIni(file, ini, charset, false);
+    }
+
+    /**
+     * @param lazyValues see {@link ByteIniParser#setLazyValues(boolean)}
+     */
+    public static void readIni(File file, Ini ini, Charset charset, boolean lazyValues) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel ch = in.getChannel();
+            long size = ch.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("File is too large: " + file);
+            ByteBuffer b = ByteBuffer.allocate((int) size);
+            while (b.hasRemaining() && ch.read(b) >= 0) {
+            }
+            b.flip();
+            ParallelIniParser p = new ParallelIniParser(ini, charset, null);
+            p.setLazyValues(lazyValues);
+            p.parse(b);
+        } finally {
+            in.close();
+        }
+    }
     //</editor-fold>
 
     public static void main(String[] args) throws Exception {
@@ -0,0 +1,284 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Changes of {@link Ini}, which are buffered and applied at once.
+ *
+ * Reads through transaction see its own changes over current state of Ini.
+ * {@link #commit()} applies changes while {@link IniFile} is locked, so
+ * threads, which synchronize on it, never see them half applied, and
+ * {@link Ini#getVersion()} is incremented once, so autosave saves them at
+ * once. {@link #rollback()} discards changes, Ini is not touched until
+ * commit.
+ *
+ * <pre>
+ * ini.transaction(new IniTransaction.Callback() {
+ *     public void run(IniTransaction tx) {
+ *         tx.set("db", "host", host);
+ *         tx.set("db", "port", port);
+ *     }
+ * });
+ * </pre>
+ *
+ * @see Ini#begin()
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+public class IniTransaction {
+
+    public interface Callback {
+
+        /**
+         * Makes changes, transaction is rolled back if this method throws
+         */
+        public void run(IniTransaction tx);
+
+    }
+
+    private final Ini ini;
+    private LinkedHashMap<String, SectionChange> changes = new LinkedHashMap<String, SectionChange>();
+
+    IniTransaction(Ini ini) {
+        this.ini = ini;
+    }
+
+    public Ini getIni() {
+        return ini;
+    }
+
+    public boolean isOpen() {
+        return changes != null;
+    }
+
+    /**
+     * @return true if transaction has no changes
+     */
+    boolean isEmpty() {
+        return changes == null || changes.isEmpty();
+    }
+
+    private static String name(String sectionName) {
+        return "".equals(sectionName) || "null".equals(sectionName) ? null : sectionName;
+    }
+
+    private SectionChange change(String sectionName) {
+        if (changes == null)
+            throw new IllegalStateException("Transaction is finished");
+        sectionName = name(sectionName);
+        SectionChange c = changes.get(sectionName);
+        if (c == null)
+            changes.put(sectionName, c = new SectionChange());
+        return c;
+    }
+
+    public IniTransaction set(String section, String key, Object value) {
+        return set(section, key, value, null, false);
+    }
+
+    public IniTransaction set(String section, String key, Object value, String comment) {
+        return set(section, key, value, comment, true);
+    }
+
+    private IniTransaction set(String section, String key, Object value, String comment, boolean setComment) {
+        if (key == null)
+            throw new NullPointerException();
+        EntryChange e = new EntryChange(String.valueOf(value), comment, setComment);
+        EntryChange p = change(section).entries.put(key, e);
+        if (!setComment && p != null && p.setComment) {
+            e.comment = p.comment;
+            e.setComment = true;
+        }
+        return this;
+    }
+
+    public IniTransaction remove(String section, String key) {
+        if (key == null)
+            throw new NullPointerException();
+        change(section).entries.put(key, new EntryChange(null, null, false));
+        return this;
+    }
+
+    public IniTransaction setComment(String section, String comment) {
+        SectionChange c = change(section);
+        c.comment = comment;
+        c.setComment = true;
+        return this;
+    }
+
+    /**
+     * Removes section with all its entries, entries set later in this
+     * transaction are added to new section
+     */
+    public IniTransaction removeSection(String section) {
+        SectionChange c = change(section);
+        c.removed = true;
+        c.entries.clear();
+        c.setComment = false;
+        c.comment = null;
+        return this;
+    }
+
+    /**
+     * @return value as of commit of this transaction, if no one else
+     * changes it
+     */
+    public String get(String section, String key) {
+        SectionChange c = change(section);
+        EntryChange e = c.entries.get(key);
+        if (e != null)
+            return e.value;
+        if (c.removed)
+            return null;
+        Ini.Section s = ini.section(name(section), false);
+        return s == null ? null : s.get(key);
+    }
+
+    public boolean isSet(String section, String key) {
+        return get(section, key) != null;
+    }
+
+    /**
+     * @return properties of section, which see changes of this transaction
+     */
+    public IniProperties section(final String section) {
+        return new AbstractIniProperties() {
+
+            public String get(String key) {
+                return IniTransaction.this.get(section, key);
+            }
+
+            public boolean isSet(String key) {
+                return IniTransaction.this.isSet(section, key);
+            }
+
+        };
+    }
+
+    /**
+     * Records changes, which turn one state into another
+     */
+    void diff(IniSnapshot from, IniSnapshot to) {
+        for (Ini.Section s : from.sections())
+            if (to.section(s.getName(), false) == null)
+                removeSection(s.getName());
+        for (Ini.Section s : to.sections()) {
+            String name = s.getName();
+            Ini.Section f = from.section(name, false);
+            if (f == s)
+                continue; // shared by snapshots, so not changed
+            if (f == null || !equal(f.getComment(), s.getComment()))
+                setComment(name, s.getComment());
+            if (f != null)
+                for (Ini.SectionEntry e : f.properties())
+                    if (!s.isSet(e.getName()))
+                        remove(name, e.getName());
+            for (Ini.SectionEntry e : s.properties()) {
+                String key = e.getName();
+                if (f == null || !e.getValue().equals(f.get(key)) || !equal(e.getComment(), f.getComment(key)))
+                    set(name, key, e.getValue(), e.getComment());
+            }
+        }
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Applies changes to Ini, transaction can't be used after commit. If
+     * applying fails, changes applied so far are kept.
+     * @see Ini#transaction(com.github.nukesparrow.ini.IniTransaction.Callback)
+     */
+    public void commit() {
+        if (changes == null)
+            throw new IllegalStateException("Transaction is finished");
+        int version = ini.getVersion();
+        try {
+            ini.apply(this);
+        } finally {
+            changes = null;
+            if (ini.getVersion() != version)
+                ini.fireChanged();
+        }
+    }
+
+    /**
+     * Discards changes, does nothing if transaction is finished already
+     */
+    public void rollback() {
+        changes = null;
+    }
+
+    /**
+     * Called by {@link Ini#apply(com.github.nukesparrow.ini.IniTransaction)}
+     */
+    void applyTo(Ini ini) {
+        for (Map.Entry<String, SectionChange> c : changes.entrySet()) {
+            String name = c.getKey();
+            SectionChange sc = c.getValue();
+            if (sc.removed && ini.section(name, false) != null)
+                ini.removeSection(name);
+            if (sc.setComment)
+                ini.section(name, true).setComment(sc.comment);
+            for (Map.Entry<String, EntryChange> e : sc.entries.entrySet()) {
+                String key = e.getKey();
+                EntryChange ec = e.getValue();
+                if (ec.value == null) {
+                    Ini.Section s = ini.section(name, false);
+                    if (s != null && s.isSet(key))
+                        s.remove(key);
+                } else if (ec.setComment) {
+                    ini.section(name, true).set(key, ec.value, ec.comment);
+                } else {
+                    ini.section(name, true).set(key, ec.value);
+                }
+            }
+        }
+    }
+
+    private static final class SectionChange {
+
+        /**
+         * Existing section is removed before changes are applied
+         */
+        boolean removed = false;
+        boolean setComment = false;
+        String comment = null;
+        final LinkedHashMap<String, EntryChange> entries = new LinkedHashMap<String, EntryChange>();
+
+    }
+
+    private static final class EntryChange {
+
+        /**
+         * New value, null if entry is removed
+         */
+        final String value;
+        String comment;
+        boolean setComment;
+
+        EntryChange(String value, String comment, boolean setComment) {
+            this.value = value;
+            this.comment = comment;
+            this.setComment = setComment;
+        }
+
+    }
+
+}
@@ -22,9 +22,21 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  *
@@ -32,6 +44,8 @@ import java.lang.reflect.Method;
  */
 public class IniUtil {
 
+    private static final Logger LOG = Logger.getLogger(IniUtil.class.getName());
+
     /**
      * This routine is planned to replace Ini files for more complex configurations
      * 
@@ -75,84 +89,448 @@ public class IniUtil {
         }
     }
 
-    private static Object toType(Class type, String value, VFilesystem vfs) {
+    /**
+     * Converts string value to type of field or setter parameter
+     */
+    public interface Converter<T> {
+
+        /**
+         * @throws IllegalArgumentException if value can't be converted
+         */
+        public T convert(String value, VFilesystem vfs);
+
+    }
+
+    private static final ConcurrentHashMap<Class<?>, Converter<?>> registeredConverters = new ConcurrentHashMap<Class<?>, Converter<?>>();
+
+    /**
+     * Converters resolved once per type, so conversion doesn't look up
+     * methods
+     */
+    private static final ClassValue<Converter<?>> converters = new ClassValue<Converter<?>>() {
+
+        @Override
+        protected Converter<?> computeValue(Class<?> type) {
+            Converter<?> c = registeredConverters.get(type);
+            return c != null ? c : builtinConverter(type);
+        }
+
+    };
+
+    /**
+     * Registers converter, which is used by {@link #loadPOJO} for fields and
+     * setters of type, instead of built-in one
+     */
+    public static <T> void registerConverter(Class<T> type, Converter<? extends T> converter) {
+        if (converter == null)
+            throw new NullPointerException();
+        registeredConverters.put(type, converter);
+        converters.remove(type);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> Converter<T> converter(Class<T> type) {
+        return (Converter<T>) converters.get(type);
+    }
+
+    private static Converter<?> builtinConverter(final Class<?> type) {
         if (type == String.class) {
-            return value;
+            return new Converter<String>() {
+                public String convert(String value, VFilesystem vfs) {
+                    return value;
+                }
+            };
         } else if (type == Boolean.TYPE) {
-            return Boolean.valueOf(value);
+            return new Converter<Boolean>() {
+                public Boolean convert(String value, VFilesystem vfs) {
+                    return Boolean.valueOf(value);
+                }
+            };
         } else if (type == Character.TYPE) {
-            return value.charAt(0);
+            return new Converter<Character>() {
+                public Character convert(String value, VFilesystem vfs) {
+                    return value.charAt(0);
+                }
+            };
         } else if (type == Byte.TYPE) {
-            return Byte.valueOf(value);
+            return new Converter<Byte>() {
+                public Byte convert(String value, VFilesystem vfs) {
+                    return Byte.valueOf(value);
+                }
+            };
         } else if (type == Short.TYPE) {
-            return Short.valueOf(value);
+            return new Converter<Short>() {
+                public Short convert(String value, VFilesystem vfs) {
+                    return Short.valueOf(value);
+                }
+            };
         } else if (type == Integer.TYPE) {
-            return Integer.valueOf(value);
+            return new Converter<Integer>() {
+                public Integer convert(String value, VFilesystem vfs) {
+                    return Integer.valueOf(value);
+                }
+            };
         } else if (type == Long.TYPE) {
-            return Long.valueOf(value);
+            return new Converter<Long>() {
+                public Long convert(String value, VFilesystem vfs) {
+                    return Long.valueOf(value);
+                }
+            };
         } else if (type == Float.TYPE) {
-            return Float.valueOf(value);
+            return new Converter<Float>() {
+                public Float convert(String value, VFilesystem vfs) {
+                    return Float.valueOf(value);
+                }
+            };
         } else if (type == Double.TYPE) {
-            return Double.valueOf(value);
+            return new Converter<Double>() {
+                public Double convert(String value, VFilesystem vfs) {
+                    return Double.valueOf(value);
+                }
+            };
         } else if (type == VFile.class) {
-            return vfs.file(value);
+            return new Converter<VFile>() {
+                public VFile convert(String value, VFilesystem vfs) {
+                    return vfs.file(value);
+                }
+            };
         } else if (type == File.class) {
-            return new File(value);
-        } else {
-            try {
-                return type.getMethod("valueOf", String.class).invoke(null, value);
-            } catch (ReflectiveOperationException ex) {
-                // ignore
+            return new Converter<File>() {
+                public File convert(String value, VFilesystem vfs) {
+                    return new File(value);
+                }
+            };
+        }
+
+        MethodHandle valueOf = null;
+        try {
+            Method m = type.getMethod("valueOf", String.class);
+            if (Modifier.isStatic(m.getModifiers()))
+                valueOf = MethodHandles.publicLookup().unreflect(m).asType(MethodType.methodType(Object.class, String.class));
+        } catch (ReflectiveOperationException ex) {
+            // ignore
+        }
+        MethodHandle constructor = null;
+        try {
+            constructor = MethodHandles.publicLookup().unreflectConstructor(type.getConstructor(String.class)).asType(MethodType.methodType(Object.class, String.class));
+        } catch (ReflectiveOperationException ex) {
+            // ignore
+        }
+        final MethodHandle[] factories = valueOf == null ? constructor == null ? new MethodHandle[0] : new MethodHandle[] {constructor}
+                : constructor == null ? new MethodHandle[] {valueOf} : new MethodHandle[] {valueOf, constructor};
+
+        return new Converter<Object>() {
+            public Object convert(String value, VFilesystem vfs) {
+                for (MethodHandle f : factories) {
+                    try {
+                        return (Object) f.invokeExact(value);
+                    } catch (Throwable ex) {
+                        // try next one
+                    }
+                }
+                throw new IllegalArgumentException("Type conversion failed for \"" + value + "\" to " + type.getCanonicalName());
             }
-            try {
-                return type.getConstructor(String.class).newInstance(value);
-            } catch (ReflectiveOperationException ex) {
-                // ignore
+        };
+    }
+
+    private static final Object NO_BINDER = new Object();
+
+    /**
+     * Generated binders, which are found by {@link ServiceLoader} of class
+     * loader of type once per type
+     */
+    private static final ClassValue<Object> binders = new ClassValue<Object>() {
+
+        @Override
+        protected Object computeValue(Class<?> type) {
+            Iterator<IniBinder<?>> i = loadBinders(type.getClassLoader()).iterator();
+            for (;;) {
+                try {
+                    if (!i.hasNext())
+                        return NO_BINDER;
+                    IniBinder<?> b = i.next();
+                    if (b.getType() == type)
+                        return b;
+                } catch (ServiceConfigurationError ex) {
+                    LOG.log(Level.WARNING, "Unable to load IniBinder", ex);
+                }
+            }
+        }
+
+    };
+
+    /**
+     * Class literal can't be parameterized, so loader of raw type is cast
+     */
+    @SuppressWarnings("unchecked")
+    private static ServiceLoader<IniBinder<?>> loadBinders(ClassLoader loader) {
+        return (ServiceLoader<IniBinder<?>>) (ServiceLoader<?>) ServiceLoader.load(IniBinder.class, loader);
+    }
+
+    /**
+     * @return generated binder of type, null if type has no binder
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> IniBinder<T> binder(Class<T> type) {
+        Object b = binders.get(type);
+        return b == NO_BINDER ? null : (IniBinder<T>) b;
+    }
+
+    /**
+     * @return new object of type, which has generated binder, loaded from
+     * properties, or implementation of interface, which reads them
+     * @throws IllegalArgumentException if type has no binder
+     * @see IniBinding
+     */
+    public static <T> T create(IniProperties properties, Class<T> type) {
+        return create(properties, type, VFilesystem.CWD);
+    }
+
+    public static <T> T create(IniProperties properties, Class<T> type, VFilesystem vfs) {
+        IniBinder<T> b = binder(type);
+        if (b == null)
+            throw new IllegalArgumentException("No IniBinder for " + type.getName() + ", is it annotated by @IniBinding and compiled with ini-processor?");
+        return b.create(properties, vfs);
+    }
+
+    /**
+     * @return version of section or Ini, which changes on every change of
+     * it, or 0 for other properties
+     */
+    public static int version(IniProperties properties) {
+        if (properties instanceof Ini.Section)
+            return ((Ini.Section) properties).getVersion();
+        if (properties instanceof Ini)
+            return ((Ini) properties).getVersion();
+        return 0;
+    }
+
+    /**
+     * Value decoded from properties, which is decoded again only after they
+     * change, used by implementations of {@link IniBinding} interfaces.
+     * Section is looked up in its Ini again after every change of Ini, as
+     * by {@link IniKey}, so section, which is removed and created again, is
+     * followed, and removed section reads as empty one. Properties, which
+     * are neither section nor Ini, have no version, so value is decoded on
+     * every read.
+     */
+    public abstract static class Cache<T> {
+
+        /**
+         * Value as of some version of Ini, immutable, so it is safely read
+         * without synchronization
+         */
+        private static final class Cached<T> {
+
+            final int version;
+            final IniProperties source;
+            final int sourceVersion;
+            final T value;
+
+            Cached(int version, IniProperties source, int sourceVersion, T value) {
+                this.version = version;
+                this.source = source;
+                this.sourceVersion = sourceVersion;
+                this.value = value;
+            }
+
+        }
+
+        private final IniProperties properties;
+        /**
+         * Ini of properties, null if they are not versioned
+         */
+        private final Ini ini;
+        private final boolean section;
+        private final String sectionName;
+        private volatile Cached<T> cached = null;
+
+        protected Cache(IniProperties properties) {
+            this.properties = properties;
+            if (properties instanceof Ini.AbstractSection) {
+                ini = ((Ini.AbstractSection) properties).ini();
+                section = true;
+                sectionName = ((Ini.AbstractSection) properties).getName();
+            } else {
+                ini = properties instanceof Ini ? (Ini) properties : null;
+                section = false;
+                sectionName = null;
+            }
+        }
+
+        /**
+         * @param properties current properties, empty ones if section has
+         * been removed
+         */
+        protected abstract T decode(IniProperties properties);
+
+        public final T get() {
+            if (ini == null)
+                return decode(properties);
+            Cached<T> c = cached;
+            int v = ini.getVersion();
+            if (c != null && c.version == v)
+                return c.value;
+            IniProperties source = ini;
+            int sv = v;
+            if (section) {
+                Ini.Section s = ini.section(sectionName, false);
+                source = s == null ? IniProperties.EMPTYINIPROPERTIES : s;
+                sv = s == null ? 0 : s.getVersion();
             }
+            T value = c != null && c.source == source && c.sourceVersion == sv ? c.value : decode(source);
+            cached = new Cached<T>(v, source, sv, value);
+            return value;
         }
-        throw new IllegalArgumentException("Type conversion failed for \"" + value + "\" to " + type.getCanonicalName());
+
     }
 
     public static <T> T loadPOJO(IniProperties properties, T obj) {
         return loadPOJO(properties, obj, VFilesystem.CWD);
     }
 
+    /**
+     * Sets public fields and setters of object from properties. Class, which
+     * has generated {@link IniBinder}, is loaded by it. Otherwise fields and
+     * setters of class are found once, and are set by method handles.
+     */
+    @SuppressWarnings("unchecked")
     public static <T> T loadPOJO(IniProperties properties, T obj, VFilesystem vfs) {
-        try {
-            for (Field field : obj.getClass().getFields()) {
-                String name = field.getAnnotation(IniKeyName.class) != null ? field.getAnnotation(IniKeyName.class).value() : field.getName();
-                if (properties.isSet(name)) {
-                    field.set(obj, toType(field.getType(), properties.get(name), vfs));
+        IniBinder<T> binder = (IniBinder<T>) binder(obj.getClass());
+        if (binder != null)
+            return binder.load(properties, obj, vfs);
+        for (Binding b : bindings.get(obj.getClass())) {
+            String value = properties.get(b.name);
+            if (value != null)
+                b.set(obj, converters.get(b.type).convert(value, vfs));
+        }
+        return obj;
+    }
+
+    public static <T> IniLiveBinding<T> bindLive(IniProperties properties, T obj) {
+        return bindLive(properties, obj, null, VFilesystem.CWD);
+    }
+
+    public static <T> IniLiveBinding<T> bindLive(IniProperties properties, T obj, IniLiveBinding.Listener<? super T> listener) {
+        return bindLive(properties, obj, listener, VFilesystem.CWD);
+    }
+
+    /**
+     * Loads object from properties, like {@link #loadPOJO}, and keeps it
+     * loaded: on every change of Ini of section changed keys are set again.
+     * Binding has to be closed, when object isn't needed anymore.
+     *
+     * @param listener called after object is updated, may be null
+     * @see IniLiveBinding
+     */
+    public static <T> IniLiveBinding<T> bindLive(IniProperties properties, T obj, IniLiveBinding.Listener<? super T> listener, VFilesystem vfs) {
+        return new IniLiveBinding<T>(properties, obj, listener, vfs);
+    }
+
+    static Binding[] bindings(Class<?> c) {
+        return bindings.get(c);
+    }
+
+    static Object convert(Class<?> type, String value, VFilesystem vfs) {
+        return converters.get(type).convert(value, vfs);
+    }
+
+    /**
+     * Public field or setter of class, which is set from key
+     */
+    static final class Binding {
+
+        final String name;
+        final Class<?> type;
+        /**
+         * (Object, Object) void, null if member is not accessible
+         */
+        private final MethodHandle setter;
+        private final boolean method;
+        private final IllegalAccessException inaccessible;
+
+        Binding(String name, Class<?> type, MethodHandle setter, boolean method, IllegalAccessException inaccessible) {
+            this.name = name;
+            this.type = type;
+            this.setter = setter;
+            this.method = method;
+            this.inaccessible = inaccessible;
+        }
+
+        void set(Object obj, Object value) {
+            if (setter == null)
+                throw new RuntimeException(inaccessible);
+            try {
+                setter.invokeExact(obj, value);
+            } catch (Throwable ex) {
+                if (!method && ex instanceof RuntimeException)
+                    throw (RuntimeException) ex;
+                if (!method && ex instanceof Error)
+                    throw (Error) ex;
+                throw new RuntimeException(new InvocationTargetException(ex));
+            }
+        }
+
+    }
+
+    private static final MethodType SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+
+    /**
+     * Bindings of class, public fields first, then setters, and methods
+     * annotated by {@link IniKeyName}
+     */
+    private static final ClassValue<Binding[]> bindings = new ClassValue<Binding[]>() {
+
+        @Override
+        protected Binding[] computeValue(Class<?> c) {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            List<Binding> l = new ArrayList<Binding>();
+            for (Field field : c.getFields()) {
+                IniKeyName a = field.getAnnotation(IniKeyName.class);
+                String name = a != null ? a.value() : field.getName();
+                MethodHandle h = null;
+                IllegalAccessException inaccessible = null;
+                try {
+                    h = lookup.unreflectSetter(field);
+                    if (Modifier.isStatic(field.getModifiers()))
+                        h = MethodHandles.dropArguments(h, 0, Object.class);
+                    h = h.asType(SETTER);
+                } catch (IllegalAccessException ex) {
+                    inaccessible = ex;
                 }
+                l.add(new Binding(name, field.getType(), h, false, inaccessible));
             }
-            
-            for (Method method : obj.getClass().getMethods()) {
+
+            for (Method method : c.getMethods()) {
                 if (method.getParameterTypes().length != 1)
                     continue;
                 String methodName = method.getName();
+                IniKeyName a = method.getAnnotation(IniKeyName.class);
                 String name =
-                    method.getAnnotation(IniKeyName.class) != null ?
-                        method.getAnnotation(IniKeyName.class).value()
+                    a != null ?
+                        a.value()
                     :
                         methodName.length() > 3 && methodName.startsWith("set") ?
                             Character.toLowerCase(methodName.charAt(3)) + methodName.substring(4)
                         :
                             null;
-                if (name == null || !properties.isSet(name))
+                if (name == null)
                     continue;
+                MethodHandle h = null;
+                IllegalAccessException inaccessible = null;
                 try {
-                    method.invoke(obj, toType(method.getParameterTypes()[0], properties.get(name), vfs));
-                } catch (InvocationTargetException ex) {
-                    throw new RuntimeException(ex);
+                    h = lookup.unreflect(method);
+                    if (Modifier.isStatic(method.getModifiers()))
+                        h = MethodHandles.dropArguments(h, 0, Object.class);
+                    h = h.asType(SETTER);
+                } catch (IllegalAccessException ex) {
+                    inaccessible = ex;
                 }
+                l.add(new Binding(name, method.getParameterTypes()[0], h, true, inaccessible));
             }
-            
-            return obj;
-        } catch (SecurityException ex) {
-            throw new RuntimeException(ex);
-        } catch (IllegalAccessException ex) {
-            throw new RuntimeException(ex);
+            return l.toArray(new Binding[l.size()]);
         }
-    }
+
+    };
 
 }
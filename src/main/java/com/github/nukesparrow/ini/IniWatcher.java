@@ -0,0 +1,215 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Single daemon thread, which reloads {@link IniFile}s changed by someone
+ * else.
+ *
+ * Directories of files are watched by {@link WatchService}. Files, which
+ * directories can't be watched, are polled by size and modification time.
+ * File is reloaded when it has not been changed for debounce period, so
+ * editor writing file in several steps causes single reload.
+ *
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+final class IniWatcher implements Runnable {
+
+    private static final Logger LOG = Logger.getLogger(IniWatcher.class.getName());
+
+    static final long DEBOUNCE = TimeUnit.MILLISECONDS.toNanos(200);
+    static final long POLL_INTERVAL = TimeUnit.SECONDS.toNanos(2);
+
+    private static IniWatcher instance = null;
+
+    static synchronized IniWatcher get() {
+        if (instance == null) {
+            instance = new IniWatcher();
+            Thread t = new Thread(instance, "IniFile watcher");
+            t.setDaemon(true);
+            t.start();
+        }
+        return instance;
+    }
+
+    private final WatchService service;
+
+    private static final class Watched {
+
+        final Path path;
+        /**
+         * Directory is not watched, file is polled
+         */
+        final boolean polled;
+        /**
+         * When file should be reloaded, 0 if no change is pending
+         */
+        long due = 0;
+
+        Watched(Path path, boolean polled) {
+            this.path = path;
+            this.polled = polled;
+        }
+
+    }
+
+    private final Map<IniFile, Watched> files = new LinkedHashMap<IniFile, Watched>();
+    private final Map<Path, WatchKey> directories = new HashMap<Path, WatchKey>();
+    private long nextPoll = System.nanoTime() + POLL_INTERVAL;
+
+    private IniWatcher() {
+        WatchService s = null;
+        try {
+            s = FileSystems.getDefault().newWatchService();
+        } catch (IOException ex) {
+            LOG.log(Level.INFO, "File system can't be watched, files will be polled", ex);
+        } catch (UnsupportedOperationException ex) {
+            LOG.log(Level.INFO, "File system can't be watched, files will be polled", ex);
+        }
+        this.service = s;
+    }
+
+    synchronized void register(IniFile ini) {
+        if (files.containsKey(ini))
+            return;
+        Path path = ini.file.getAbsoluteFile().toPath();
+        Path dir = path.getParent();
+        boolean polled = service == null;
+        if (!polled && !directories.containsKey(dir)) {
+            try {
+                directories.put(dir, dir.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE));
+            } catch (IOException ex) {
+                LOG.log(Level.FINE, "Unable to watch " + dir + ", polling " + path, ex);
+                polled = true;
+            }
+        }
+        files.put(ini, new Watched(path, polled));
+        notifyAll();
+    }
+
+    synchronized void unregister(IniFile ini) {
+        Watched w = files.remove(ini);
+        if (w == null || w.polled)
+            return;
+        Path dir = w.path.getParent();
+        for (Watched o : files.values())
+            if (!o.polled && o.path.getParent().equals(dir))
+                return;
+        WatchKey k = directories.remove(dir);
+        if (k != null)
+            k.cancel();
+    }
+
+    /**
+     * Postpones reload of files, which have been changed
+     */
+    private void changed(Path path, long now) {
+        for (Watched w : files.values())
+            if (path == null ? !w.polled : w.path.equals(path))
+                w.due = now + DEBOUNCE;
+    }
+
+    public void run() {
+        for (;;) {
+            try {
+                WatchKey key = await();
+                synchronized (this) {
+                    long now = System.nanoTime();
+                    if (key != null) {
+                        Path dir = (Path) key.watchable();
+                        for (WatchEvent<?> e : key.pollEvents()) {
+                            if (e.kind() == StandardWatchEventKinds.OVERFLOW)
+                                changed(null, now);
+                            else
+                                changed(dir.resolve((Path) e.context()), now);
+                        }
+                        key.reset();
+                    }
+                    if (now - nextPoll >= 0) {
+                        nextPoll = now + POLL_INTERVAL;
+                        for (Map.Entry<IniFile, Watched> e : files.entrySet())
+                            if (e.getValue().polled && e.getValue().due == 0 && e.getKey().isChangedOnDisk())
+                                e.getValue().due = now + DEBOUNCE;
+                    }
+                }
+                reloadDue();
+            } catch (InterruptedException ex) {
+                return;
+            } catch (RuntimeException ex) {
+                LOG.log(Level.SEVERE, "IniFile watcher failure", ex);
+            }
+        }
+    }
+
+    /**
+     * Waits for event, next poll or next due reload
+     */
+    private WatchKey await() throws InterruptedException {
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            wait = nextPoll - now;
+            for (Watched w : files.values())
+                if (w.due != 0)
+                    wait = Math.min(wait, w.due - now);
+            if (wait > 0 && (service == null || files.isEmpty())) {
+                TimeUnit.NANOSECONDS.timedWait(this, wait);
+                return null;
+            }
+        }
+        return wait > 0 ? service.poll(wait, TimeUnit.NANOSECONDS) : service.poll();
+    }
+
+    private void reloadDue() {
+        List<IniFile> due = new ArrayList<IniFile>();
+        synchronized (this) {
+            long now = System.nanoTime();
+            for (Map.Entry<IniFile, Watched> e : files.entrySet()) {
+                Watched w = e.getValue();
+                if (w.due != 0 && now - w.due >= 0) {
+                    w.due = 0;
+                    due.add(e.getKey());
+                }
+            }
+        }
+        for (IniFile ini : due) {
+            try {
+                if (ini.isChangedOnDisk())
+                    ini.reload();
+            } catch (IOException ex) {
+                LOG.log(Level.WARNING, "Unable to reload " + ini.file, ex);
+            }
+        }
+    }
+
+}
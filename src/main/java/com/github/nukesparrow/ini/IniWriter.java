@@ -0,0 +1,187 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Forward only .ini writer, which does not need {@link Ini} in memory.
+ * {@link IniStringUtil#buildIni(java.lang.Appendable, com.github.nukesparrow.ini.Ini)}
+ * is implemented on top of it, so for the same content output is the same.
+ *
+ * Top level section (name null) may be given only before anything else is
+ * written. Unnamed list elements of a section must precede its named
+ * entries. Each section should be written once.
+ *
+ * <pre>
+ * IniWriter w = new IniWriter(writer);
+ * try {
+ *     w.section(null, "file comment").entry("key", "value");
+ *     w.section("list").unnamed("a").unnamed("b");
+ * } finally {
+ *     w.close();
+ * }
+ * </pre>
+ *
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+public class IniWriter implements Closeable, Flushable {
+
+    public static final int BUFFER_SIZE = 8192;
+
+    private final Appendable out;
+
+    private boolean started = false;
+    private String topComment = null;
+    private boolean named = false;
+
+    IniWriter(Appendable out) {
+        this(out, false);
+    }
+
+    /**
+     * @param started true to continue output after top level section
+     */
+    IniWriter(Appendable out, boolean started) {
+        if (out == null)
+            throw new NullPointerException();
+        this.out = out;
+        this.started = started;
+    }
+
+    public IniWriter(Writer w) {
+        this((Appendable) (w instanceof BufferedWriter ? w : new BufferedWriter(w, BUFFER_SIZE)));
+    }
+
+    public IniWriter(WritableByteChannel ch, Charset charset) {
+        this(Channels.newWriter(ch, charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE), BUFFER_SIZE));
+    }
+
+    /**
+     * Writes top level section part, which is always present in output
+     */
+    private void start() throws IOException {
+        if (started)
+            return;
+        started = true;
+        IniStringUtil.buildComment(out, topComment, false);
+        out.append('\n');
+        topComment = null;
+    }
+
+    public IniWriter section(String name) throws IOException {
+        return section(name, null);
+    }
+
+    /**
+     * Starts new section
+     * @param name section name, null or "" for top level section
+     * @param comment section comment or null
+     */
+    public IniWriter section(String name, String comment) throws IOException {
+        if ("".equals(name) || "null".equals(name))
+            name = null;
+
+        if (name == null) {
+            if (started)
+                throw new IllegalStateException("Top level section must be written first");
+            topComment = comment;
+            return this;
+        }
+
+        start();
+        IniStringUtil.buildComment(out, comment, true);
+        out.append('[');
+        IniStringUtil.escapeSection(out, name);
+        out.append("]\n\n");
+        named = false;
+        return this;
+    }
+
+    public IniWriter entry(String key, String value) throws IOException {
+        return entry(key, value, null);
+    }
+
+    public IniWriter entry(String key, String value, String comment) throws IOException {
+        if (key == null || value == null)
+            throw new NullPointerException();
+        start();
+        IniStringUtil.buildComment(out, comment, false);
+        IniStringUtil.escapeKey(out, key);
+        out.append('=');
+        IniStringUtil.escapeValue(out, value);
+        out.append('\n');
+        named = true;
+        return this;
+    }
+
+    public IniWriter unnamed(String value) throws IOException {
+        return unnamed(value, null);
+    }
+
+    /**
+     * Writes next element of current section unnamed list
+     */
+    public IniWriter unnamed(String value, String comment) throws IOException {
+        if (value == null)
+            throw new NullPointerException();
+        if (named)
+            throw new IllegalStateException("Unnamed list must precede named entries of section");
+        start();
+        IniStringUtil.buildComment(out, comment, false);
+        IniStringUtil.escapeKey(out, value);
+        out.append('\n');
+        return this;
+    }
+
+    public IniWriter unnamed(Iterable<String> values) throws IOException {
+        for (String value : values)
+            unnamed(value, null);
+        return this;
+    }
+
+    /**
+     * Completes output without flushing or closing destination
+     */
+    void end() throws IOException {
+        start();
+    }
+
+    public void flush() throws IOException {
+        if (out instanceof Flushable)
+            ((Flushable) out).flush();
+    }
+
+    public void close() throws IOException {
+        try {
+            end();
+        } finally {
+            if (out instanceof Closeable)
+                ((Closeable) out).close();
+        }
+    }
+
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini;
+
+import java.nio.charset.Charset;
+
+/**
+ * Raw .ini data shared by entries, which are decoded on first access
+ *
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+final class LazyValues {
+
+    final byte[] data;
+    final Charset charset;
+
+    LazyValues(byte[] data, Charset charset) {
+        this.data = data;
+        this.charset = charset;
+    }
+
+    /**
+     * @param offset start of trimmed escaped value
+     * @param length length of trimmed escaped value
+     * @return unescaped value
+     */
+    String decode(int offset, int length) {
+        return ByteIniParser.decode(data, offset, offset + length, charset, true);
+    }
+
+}
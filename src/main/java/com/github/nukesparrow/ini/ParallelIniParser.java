@@ -0,0 +1,271 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parses large .ini data on {@link ForkJoinPool}.
+ *
+ * Data is split into chunks at line boundaries, preferably right before
+ * section headers. Chunks are scanned, decoded and unescaped concurrently by
+ * {@link ByteIniParser} engines, which only record classified lines. Records
+ * are then replayed in file order through single target parser, so comment
+ * attachment, repeated sections and unnamed list numbering are exactly the
+ * same as with sequential parsing.
+ *
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+public class ParallelIniParser {
+
+    /**
+     * Data size, from which parallel parsing is worth it, smaller data is
+     * parsed sequentially
+     */
+    public static final int PARALLEL_THRESHOLD = 1024 * 1024;
+
+    private static ForkJoinPool sharedPool = null;
+
+    private static synchronized ForkJoinPool sharedPool() {
+        if (sharedPool == null)
+            sharedPool = new ForkJoinPool();
+        return sharedPool;
+    }
+
+    private final ByteIniParser parser;
+    private final Charset charset;
+    private final ForkJoinPool pool;
+
+    int threshold = PARALLEL_THRESHOLD;
+    int minChunkSize = PARALLEL_THRESHOLD / 4;
+
+    private boolean lazyValues = false;
+
+    public ParallelIniParser(Ini ini) {
+        this(ini, ByteIniParser.UTF8, null);
+    }
+
+    /**
+     * @param ini destination
+     * @param charset ASCII compatible charset
+     * @param pool pool to run on, shared pool is used if null
+     */
+    public ParallelIniParser(Ini ini, Charset charset, ForkJoinPool pool) {
+        this.parser = new ByteIniParser(ini, charset);
+        this.charset = charset;
+        this.pool = pool;
+    }
+
+    public boolean isLazyValues() {
+        return lazyValues;
+    }
+
+    /**
+     * @see ByteIniParser#setLazyValues(boolean)
+     */
+    public void setLazyValues(boolean lazyValues) {
+        this.lazyValues = lazyValues;
+        parser.setLazyValues(lazyValues);
+    }
+
+    /**
+     * Parses remaining bytes of buffer, buffer position is moved to its limit
+     */
+    public void parse(ByteBuffer b) {
+        if (b.remaining() < threshold) {
+            parser.parse(b);
+            return;
+        }
+        ForkJoinPool p = pool == null ? sharedPool() : pool;
+        int chunks = Math.min(b.remaining() / minChunkSize, p.getParallelism() * 2);
+        if (chunks < 2) {
+            parser.parse(b);
+            return;
+        }
+
+        List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>(chunks);
+        List<Chunk> recorded = new ArrayList<Chunk>(chunks);
+        int start = b.position();
+        int chunkSize = b.remaining() / chunks;
+        while (start < b.limit()) {
+            int end = Math.min(b.limit(), splitPoint(b, start + chunkSize));
+            ByteBuffer slice = b.duplicate();
+            slice.position(start);
+            slice.limit(end);
+            Chunk c = new Chunk(slice, charset, lazyValues);
+            recorded.add(c);
+            tasks.add(p.submit(c));
+            start = end;
+        }
+
+        for (int i = 0; i < tasks.size(); i++) {
+            tasks.get(i).join();
+            recorded.get(i).replay(parser);
+            recorded.set(i, null);
+        }
+        parser.finish();
+        b.position(b.limit());
+    }
+
+    /**
+     * @return start of the first section header line after position p, or
+     * start of the first line after p if there is no header until the end
+     */
+    private static int splitPoint(ByteBuffer b, int p) {
+        int limit = b.limit();
+        int firstLine = -1;
+        while (p < limit) {
+            byte c = b.get(p++);
+            if (c != '\n' && c != '\r')
+                continue;
+            if (c == '\r' && p < limit && b.get(p) == '\n')
+                p++;
+            if (firstLine == -1)
+                firstLine = p;
+            int s = p;
+            while (s < limit && b.get(s) != '\n' && b.get(s) != '\r' && (b.get(s) & 0xFF) <= ' ')
+                s++;
+            if (s < limit && b.get(s) == '[')
+                return p;
+        }
+        return firstLine == -1 ? limit : firstLine;
+    }
+
+    private static final byte BLANK = 0, COMMENT = 1, SECTION = 2, ITEM = 3, ENTRY = 4, LAZY_ENTRY = 5;
+
+    /**
+     * Classified lines of single chunk
+     */
+    private static class Chunk extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ByteBuffer data;
+        private final Recorder recorder;
+
+        Chunk(ByteBuffer data, Charset charset, boolean lazyValues) {
+            this.data = data;
+            this.recorder = new Recorder(charset);
+            this.recorder.setLazyValues(lazyValues);
+        }
+
+        @Override
+        protected void compute() {
+            recorder.parse(data);
+        }
+
+        void replay(StringIniParser p) {
+            Object[] s = recorder.objects;
+            for (int i = 0; i < recorder.size; i++) {
+                switch (recorder.types[i]) {
+                    case BLANK:
+                        p.blankLine();
+                        break;
+                    case COMMENT:
+                        p.comment((String) s[i * 2]);
+                        break;
+                    case SECTION:
+                        p.sectionStart((String) s[i * 2]);
+                        break;
+                    case ITEM:
+                        p.unnamedItem((String) s[i * 2]);
+                        break;
+                    case ENTRY:
+                        p.entry((String) s[i * 2], (String) s[i * 2 + 1]);
+                        break;
+                    case LAZY_ENTRY:
+                        p.entry((String) s[i * 2], (LazyValues) s[i * 2 + 1], recorder.ranges[i * 2], recorder.ranges[i * 2 + 1]);
+                        break;
+                }
+            }
+        }
+
+    }
+
+    private static class Recorder extends ByteIniParser {
+
+        byte[] types = new byte[1024];
+        Object[] objects = new Object[2048];
+        int[] ranges = null;
+        int size = 0;
+
+        Recorder(Charset charset) {
+            super(charset);
+        }
+
+        private void record(byte type, String a, Object b) {
+            if (size == types.length) {
+                byte[] t = new byte[size * 2];
+                System.arraycopy(types, 0, t, 0, size);
+                types = t;
+                Object[] o = new Object[size * 4];
+                System.arraycopy(objects, 0, o, 0, size * 2);
+                objects = o;
+                if (ranges != null) {
+                    int[] r = new int[size * 4];
+                    System.arraycopy(ranges, 0, r, 0, size * 2);
+                    ranges = r;
+                }
+            }
+            types[size] = type;
+            objects[size * 2] = a;
+            objects[size * 2 + 1] = b;
+            size++;
+        }
+
+        @Override
+        void blankLine() {
+            record(BLANK, null, null);
+        }
+
+        @Override
+        void comment(String text) {
+            record(COMMENT, text, null);
+        }
+
+        @Override
+        void sectionStart(String name) {
+            record(SECTION, name, null);
+        }
+
+        @Override
+        void unnamedItem(String value) {
+            record(ITEM, value, null);
+        }
+
+        @Override
+        void entry(String key, String value) {
+            record(ENTRY, key, value);
+        }
+
+        @Override
+        void entry(String key, LazyValues values, int offset, int length) {
+            if (ranges == null)
+                ranges = new int[types.length * 2];
+            record(LAZY_ENTRY, key, values);
+            ranges[size * 2 - 2] = offset;
+            ranges[size * 2 - 1] = length;
+        }
+
+    }
+
+}
@@ -32,6 +32,13 @@ public class StringIniParser {
         this.ini = ini;
     }
 
+    /**
+     * For parsers, which override all handlers and do not fill any Ini
+     */
+    StringIniParser() {
+        this.ini = null;
+    }
+
     private Ini.Section section = null;
     
     private Ini.Section section(String sn) {
@@ -44,33 +51,67 @@ public class StringIniParser {
         return section;
     }
 
+    /**
+     * Section, which can be updated directly, or null if Ini provides other
+     * section implementation
+     */
+    private Ini.IniSection allocatedSection() {
+        Ini.Section s = section();
+        if (!(s instanceof Ini.IniSection)) {
+            s = ini.section(s.getName(), true);
+            if (!(s instanceof Ini.IniSection))
+                return null;
+            section = s;
+        }
+        return (Ini.IniSection) s;
+    }
+
     public Ini.Section currentSection() {
         return section;
     }
 
+    /**
+     * Section, which unnamed list is being appended, its element count and
+     * whether it has been changed without notification yet
+     */
+    private Ini.IniSection listSection = null;
+    private int listCount;
+    private boolean listChanged = false;
+
+    /**
+     * Completes modifications, which are delayed while parsing. Called by
+     * parse methods, should be called after the last
+     * {@link #parseLine(java.lang.String)}.
+     */
+    public void finish() {
+        if (listChanged)
+            listSection.unnamedAppended();
+        listSection = null;
+        listChanged = false;
+    }
+
     private StringBuilder comment = null;
 
+    /**
+     * @return true if comment lines have been read, which are not attached
+     * to anything yet
+     */
+    boolean hasPendingComment() {
+        return comment != null;
+    }
+
     public void parseLine(String line) {
         if (line == null)
             throw new NullPointerException();
         line = line.trim();
         
         if (line.isEmpty()) {
-            if (comment != null && section == null) {
-                comment.trimToSize();
-                section(null).setComment(comment.toString());
-                comment = null;
-            } else if (comment != null) {
-                
-            }
+            blankLine();
             return;
         }
         
         if (line.startsWith("#")) {
-            if (comment == null)
-                comment = new StringBuilder(line.substring(1));
-            else
-                comment.append('\n').append(line.substring(1));
+            comment(line.substring(1));
             return;
         }
         
@@ -81,36 +122,106 @@ public class StringIniParser {
             else
                 line = line.substring(1, i);
             line = line.trim();
-            section(IniStringUtil.unescape(line));
-            if (comment != null) {
-                comment.trimToSize();
-                section.setComment(comment.toString());
-                comment = null;
-            }
+            sectionStart(IniStringUtil.unescape(line));
             return;
         }
         
         int i = line.indexOf('=');
         if (i == -1) {
-            String index = Integer.toString(section().get("count", 0) + 1);
-            if (comment != null) {
-                comment.trimToSize();
-                section.set(index, IniStringUtil.unescape(line), comment.toString());
-                comment = null;
-            } else {
-                section.set(index, IniStringUtil.unescape(line));
-            }
-            section.set("count", index);
+            unnamedItem(IniStringUtil.unescape(line));
         } else {
-            String key = IniStringUtil.unescape(line.substring(0, i).trim());
-            String value = IniStringUtil.unescape(line.substring(i + 1).trim());
+            entry(IniStringUtil.unescape(line.substring(0, i).trim()), IniStringUtil.unescape(line.substring(i + 1).trim()));
+        }
+    }
+
+    /*
+     * Handlers below are invoked for every classified line, whichever engine
+     * has scanned it, so all parsers fill Ini in exactly the same way.
+     */
+
+    void blankLine() {
+        if (comment != null && section == null) {
+            comment.trimToSize();
+            section(null).setComment(comment.toString());
+            comment = null;
+        } else if (comment != null) {
+
+        }
+    }
+
+    void comment(String text) {
+        if (comment == null)
+            comment = new StringBuilder(text);
+        else
+            comment.append('\n').append(text);
+    }
+
+    void sectionStart(String name) {
+        finish();
+        section(name);
+        if (comment != null) {
+            comment.trimToSize();
+            section.setComment(comment.toString());
+            comment = null;
+        }
+    }
+
+    void unnamedItem(String value) {
+        Ini.IniSection s = allocatedSection();
+        if (s != null) {
+            if (listSection != s) {
+                finish();
+                listSection = s;
+                listCount = s.get("count", 0);
+            }
+            String c = null;
             if (comment != null) {
                 comment.trimToSize();
-                section().set(key, value, comment.toString());
+                c = comment.toString();
                 comment = null;
-            } else {
-                section().set(key, value);
             }
+            listChanged |= s.appendUnnamed(++listCount, value, c);
+            return;
+        }
+
+        String index = Integer.toString(section().get("count", 0) + 1);
+        if (comment != null) {
+            comment.trimToSize();
+            section.set(index, value, comment.toString());
+            comment = null;
+        } else {
+            section.set(index, value);
+        }
+        section.set("count", index);
+    }
+
+    /**
+     * Entry with value, which is decoded on first access
+     */
+    void entry(String key, LazyValues values, int offset, int length) {
+        Ini.IniSection s = allocatedSection();
+        if (s == null || "count".equals(key)) {
+            entry(key, values.decode(offset, length));
+            return;
+        }
+        String c = null;
+        if (comment != null) {
+            comment.trimToSize();
+            c = comment.toString();
+            comment = null;
+        }
+        s.set(key, values, offset, length, c);
+    }
+
+    void entry(String key, String value) {
+        if ("count".equals(key))
+            finish();
+        if (comment != null) {
+            comment.trimToSize();
+            section().set(key, value, comment.toString());
+            comment = null;
+        } else {
+            section().set(key, value);
         }
     }
 
@@ -126,6 +237,7 @@ public class StringIniParser {
         String line;
         while ((line = r.readLine()) != null)
             parseLine(line);
+        finish();
     }
 
 }
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Canonicalizing pool of short strings, which lets many {@link Ini}
+ * instances share section names, keys and values instead of keeping own
+ * copies.
+ *
+ * Table has fixed number of slots, one string per slot, so memory used by
+ * pool is bounded. String, which hashes to occupied slot, replaces its
+ * previous occupant. Pool is lock free and may be shared by any number of
+ * threads.
+ *
+ * @see Ini#setStringPool(com.github.nukesparrow.ini.StringPool)
+ * @see IniFile#setDefaultStringPool(com.github.nukesparrow.ini.StringPool)
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+public class StringPool {
+
+    public static final int DEFAULT_CAPACITY = 8192;
+    public static final int DEFAULT_MAX_LENGTH = 32;
+
+    private final AtomicReferenceArray<String> table;
+    private final int mask;
+    private final int maxLength;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong savedBytes = new AtomicLong();
+
+    public StringPool() {
+        this(DEFAULT_CAPACITY, DEFAULT_MAX_LENGTH);
+    }
+
+    /**
+     * @param capacity number of slots, rounded up to power of two
+     * @param maxLength longer strings are not pooled
+     */
+    public StringPool(int capacity, int maxLength) {
+        if (capacity <= 0 || maxLength < 0)
+            throw new IllegalArgumentException();
+        int c = Integer.highestOneBit(capacity);
+        if (c < capacity)
+            c <<= 1;
+        this.table = new AtomicReferenceArray<String>(c);
+        this.mask = c - 1;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * @return pooled string equal to s, or s itself, which is pooled if it
+     * is short enough
+     */
+    public String canonicalize(String s) {
+        if (s == null || s.length() > maxLength)
+            return s;
+        int h = s.hashCode();
+        int i = (h ^ (h >>> 16)) & mask;
+        String p = table.get(i);
+        if (p == s)
+            return p;
+        if (p != null && p.equals(s)) {
+            hits.incrementAndGet();
+            savedBytes.addAndGet(sizeOf(s));
+            return p;
+        }
+        misses.incrementAndGet();
+        table.lazySet(i, s);
+        return s;
+    }
+
+    /**
+     * Rough size of String object with its own char array
+     */
+    private static long sizeOf(String s) {
+        return 24 + ((16 + 2L * s.length() + 7) & ~7);
+    }
+
+    public int getCapacity() {
+        return table.length();
+    }
+
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    /**
+     * @return number of strings replaced by pooled ones
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of strings added to pool
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return estimated heap size of strings replaced by pooled ones, which
+     * may be collected unless referenced elsewhere
+     */
+    public long getSavedBytes() {
+        return savedBytes.get();
+    }
+
+    public void resetStats() {
+        hits.set(0);
+        misses.set(0);
+        savedBytes.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "StringPool{capacity=" + getCapacity() + ", hits=" + getHits() + ", misses=" + getMisses() + ", savedBytes=" + getSavedBytes() + '}';
+    }
+
+}
@@ -25,6 +25,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.Iterator;
@@ -70,9 +71,9 @@ public abstract class VFilesystem {
     }
 
     public Ini getIni(String path) throws IOException {
-        InputStream in = openRead(path);
+        byte[] b = getBytes(path);
         
-        return in == null ? null : IniStringUtil.parseIni(StreamUtils.streamToString(in, true, UTF8));
+        return b == null ? null : IniStringUtil.parseIni(ByteBuffer.wrap(b));
     }
 
     public File toFile(String path) {
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import org.junit.Test;
+
+/**
+ *
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+public class ByteIniParserTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    static final String SAMPLE =
+            "#file comment\r\n" +
+            "\r\n" +
+            "top = level\r" +
+            "#entry\n#comment\n" +
+            "k%3Dey=va+lue%25 \n" +
+            "  bare item  \n" +
+            "\n" +
+            "# section\n" +
+            "[ s%5D1 ]\n" +
+            "a=1\n" +
+            "item1\n" +
+            "b = жук %2B\n" +
+            "item2\n" +
+            "%zz=%-F%+1%\n" +
+            "[unterminated\n" +
+            "x\n" +
+            "[]\n" +
+            "again=null\n" +
+            "[empty]\n" +
+            "#dangling";
+
+    static String dump(Ini ini) {
+        StringBuilder b = new StringBuilder();
+        for (Ini.Section s : ini.sections()) {
+            b.append('[').append(s.getName()).append("] #").append(s.getComment()).append('\n');
+            for (Ini.SectionEntry e : s.properties())
+                b.append(e.getName()).append('=').append(e.getValue()).append(" #").append(e.getComment()).append('\n');
+        }
+        return b.toString();
+    }
+
+    @Test
+    public void testSameAsStringParser() throws Exception {
+        String expected = dump(IniStringUtil.parseIni(SAMPLE));
+
+        byte[] bytes = SAMPLE.getBytes(UTF8);
+        assert expected.equals(dump(IniStringUtil.parseIni(ByteBuffer.wrap(bytes))));
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+        assert expected.equals(dump(IniStringUtil.parseIni(direct)));
+        assert !direct.hasRemaining();
+
+        Ini lazy = new Ini();
+        ByteIniParser p = new ByteIniParser(lazy);
+        p.setLazyValues(true);
+        p.parse(ByteBuffer.wrap(bytes));
+        assert expected.equals(dump(lazy));
+
+        Ini ini = IniStringUtil.parseIni(ByteBuffer.wrap(bytes));
+        assert "va lue%".equals(ini.section(null).get("k=ey"));
+        assert "жук +".equals(ini.section("s]1").get("b"));
+        assert ini.section("empty", false) == null;
+    }
+
+    @Test
+    public void testUnnamedListIsAppendedInBulk() throws Exception {
+        StringBuilder t = new StringBuilder("[list]\n");
+        for (int i = 1; i <= 1000; i++)
+            t.append("element").append(i).append('\n');
+
+        Ini ini = IniStringUtil.parseIni(ByteBuffer.wrap(t.toString().getBytes(UTF8)));
+        assert ini.getVersion() == 2;
+        assert ini.section("list").getVersion() == 1;
+        assert "1000".equals(ini.section("list").get("count"));
+        assert "element1000".equals(ini.section("list").get("1000"));
+        assert ini.section("list").unnamedList().size() == 1000;
+    }
+
+}
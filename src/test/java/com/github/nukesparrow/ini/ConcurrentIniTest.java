@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+/**
+ *
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+public class ConcurrentIniTest {
+
+    private static final String TEXT = "#top\ntop=1\n\n#about a\n[a]\nx=1\ny=\n#list\nfirst\nsecond\n[b]\nz=%2B1\n[a]\nx=2\n";
+
+    @Test
+    public void testSameAsIni() throws Exception {
+        Ini ini = IniStringUtil.parseIni(TEXT);
+        ConcurrentIni c = new ConcurrentIni();
+        new StringIniParser(c).parse(new BufferedReader(new StringReader(TEXT)));
+        assert IniStringUtil.iniToString(c).equals(IniStringUtil.iniToString(ini)) : IniStringUtil.iniToString(c);
+        assert IniStringUtil.iniToString(new ConcurrentIni(ini)).equals(IniStringUtil.iniToString(ini));
+
+        for (Ini i : new Ini[] {ini, c}) {
+            i.section("a").unnamedList().add("third");
+            i.section("a").remove("y");
+            i.section("b").setComment("about b");
+            i.section("c").set("k", 5, "five");
+            i.removeSection("b");
+        }
+        assert IniStringUtil.iniToString(c).equals(IniStringUtil.iniToString(ini)) : IniStringUtil.iniToString(c);
+        assert c.section("a").get("x", 0) == 2;
+        assert c.section("a").unnamedList().get(2).equals("third");
+        assert c.section("c").getComment("k").equals("five");
+        assert c.section("missing").get("k", 7L) == 7L;
+        assert c.isModified();
+        c.clearModified();
+        c.section("a").set("x", "2");
+        assert !c.isModified();
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final ConcurrentIni ini = new ConcurrentIni();
+        final int writers = 4, keys = 2000;
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final AtomicBoolean done = new AtomicBoolean();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int w = 0; w < writers; w++) {
+            final String section = "s" + w;
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    Ini.Section s = ini.section(section);
+                    for (int i = 0; i < keys; i++) {
+                        s.set("k" + i, i);
+                        s.unnamedList().add(Integer.toString(i));
+                        if (i % 3 == 0)
+                            s.remove("k" + (i / 2));
+                    }
+                }
+            });
+        }
+        for (int r = 0; r < 2; r++) {
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        while (!done.get()) {
+                            for (Ini.Section s : ini.sections()) {
+                                for (Ini.SectionEntry e : s.properties())
+                                    assert e.getValue() != null;
+                                List<String> l = s.unnamedList();
+                                int n = l.size();
+                                if (n > 0)
+                                    assert l.get(n - 1).equals(Integer.toString(n - 1));
+                            }
+                        }
+                    } catch (Throwable t) {
+                        failure.set(t);
+                    }
+                }
+            });
+        }
+        for (Thread t : threads)
+            t.start();
+        for (int i = 0; i < writers; i++)
+            threads.get(i).join();
+        done.set(true);
+        for (Thread t : threads)
+            t.join();
+        if (failure.get() != null)
+            throw new AssertionError(failure.get());
+
+        assert ini.sections().size() == writers;
+        for (Ini.Section s : ini.sections()) {
+            assert s.unnamedList().size() == keys;
+            assert s.get("k" + (keys - 1), 0) == keys - 1;
+        }
+    }
+
+}
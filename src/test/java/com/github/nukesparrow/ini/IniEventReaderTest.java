@@ -0,0 +1,65 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import org.junit.Test;
+
+/**
+ *
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+public class IniEventReaderTest {
+
+    @Test
+    public void testEventsMatchParser() throws Exception {
+        Ini ini = IniStringUtil.parseIni(ByteIniParserTest.SAMPLE);
+        Ini replayed = new Ini();
+
+        IniEventReader r = new IniEventReader(new BufferedReader(new StringReader(ByteIniParserTest.SAMPLE)));
+        IniEventReader.Event first = null;
+        int comments = 0;
+        try {
+            IniEventReader.Event e;
+            while ((e = r.next()) != null) {
+                if (first == null)
+                    first = e;
+                assert first == e;
+                switch (e.getType()) {
+                    case ENTRY:
+                        assert e.getValue().equals(ini.section(e.getSection()).get(e.getKey()));
+                        replayed.section(e.getSection()).set(e.getKey(), e.getValue());
+                        break;
+                    case UNNAMED:
+                        replayed.section(e.getSection()).unnamedList().add(e.getValue());
+                        break;
+                    case COMMENT:
+                        comments++;
+                        break;
+                }
+            }
+        } finally {
+            r.close();
+        }
+
+        assert comments == 5;
+        assert ini.section(null).unnamedList().equals(replayed.section(null).unnamedList());
+        assert ini.section("s]1").unnamedList().equals(replayed.section("s]1").unnamedList());
+        assert "null".equals(replayed.get("again"));
+    }
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ *
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+public class IniFileAutoSaveTest {
+
+    @Test
+    public void testChangesAreCoalesced() throws Exception {
+        File f = File.createTempFile("autosave", ".ini");
+        try {
+            IniFile ini = new IniFile(f);
+            ini.setAutoSaveDelay(200, 2000, TimeUnit.MILLISECONDS);
+            ini.enableAutoSave();
+            for (int i = 0; i < 1000; i++)
+                ini.section("s").set("k" + i, i);
+            assert f.length() == 0;
+            assert ini.isModified();
+
+            assert ini.awaitSaved(10, TimeUnit.SECONDS);
+            assert !ini.isModified();
+            assert new IniFile(f).section("s").get("k999", 0) == 999;
+
+            ini.set("top", "value");
+            ini.flush();
+            assert new IniFile(f).get("top").equals("value");
+            assert ini.awaitSaved(0, TimeUnit.SECONDS);
+        } finally {
+            f.delete();
+        }
+    }
+
+}
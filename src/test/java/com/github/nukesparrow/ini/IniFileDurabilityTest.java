@@ -0,0 +1,124 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ *
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+public class IniFileDurabilityTest {
+
+    @Test
+    public void testSaveWithEachLevel() throws Exception {
+        File f = File.createTempFile("durability", ".ini");
+        try {
+            for (IniFile.Durability d : IniFile.Durability.values()) {
+                IniFile ini = new IniFile(f);
+                ini.setDurability(d);
+                ini.section("s").set("level", d.name());
+                ini.save();
+                assert !ini.isModified();
+                assert !new File(f.getPath() + "~").exists();
+                assert new IniFile(f).section("s").get("level").equals(d.name());
+            }
+        } finally {
+            f.delete();
+        }
+    }
+
+    @Test
+    public void testSaveAll() throws Exception {
+        List<IniFile> files = new ArrayList<IniFile>();
+        try {
+            for (int i = 0; i < 5; i++) {
+                File f = File.createTempFile("durability", ".ini");
+                f.delete();
+                IniFile ini = new IniFile(f);
+                ini.setDurability(IniFile.Durability.FSYNC);
+                ini.set("n", i);
+                files.add(ini);
+            }
+            files.get(4).clearModified();
+            IniFile.saveAll(files);
+            for (int i = 0; i < 5; i++) {
+                assert !files.get(i).isModified();
+                assert files.get(i).file.exists() == (i < 4);
+                if (i < 4)
+                    assert new IniFile(files.get(i).file).get("n").equals(Integer.toString(i));
+            }
+        } finally {
+            for (IniFile ini : files)
+                ini.file.delete();
+        }
+    }
+
+    @Test
+    public void testChangesDuringSave() throws Exception {
+        File f = File.createTempFile("durability", ".ini");
+        try {
+            final IniFile ini = new IniFile(f);
+            for (int i = 0; i < 100; i++)
+                ini.section("s" + i).set("k", i);
+            ini.save();
+            Thread writer = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 5000; i++) {
+                        synchronized (ini) {
+                            ini.section("s" + (i % 100)).set("k", i);
+                        }
+                    }
+                }
+            };
+            writer.start();
+            while (writer.isAlive())
+                ini.save();
+            writer.join();
+            ini.saveIfModified();
+            assert IniStringUtil.iniToString(new IniFile(f)).equals(IniStringUtil.iniToString(ini));
+        } finally {
+            f.delete();
+        }
+    }
+
+    @Test
+    public void testJournalAndAutoSave() throws Exception {
+        File f = File.createTempFile("durability", ".ini");
+        File j = new File(f.getPath() + ".journal");
+        try {
+            IniFile ini = new IniFile(f);
+            ini.setDurability(IniFile.Durability.FSYNC_DATA);
+            ini.setJournalEnabled(true);
+            ini.setAutoSaveDelay(10, 100, TimeUnit.MILLISECONDS);
+            ini.enableAutoSave();
+            for (int i = 0; i < 10; i++)
+                ini.set("k" + i, i);
+            assert ini.awaitSaved(10, TimeUnit.SECONDS);
+            assert j.exists();
+            assert new IniFile(f).get("k9").equals("9");
+        } finally {
+            f.delete();
+            j.delete();
+        }
+    }
+
+}
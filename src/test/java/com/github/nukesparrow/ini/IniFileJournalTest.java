@@ -0,0 +1,123 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import org.junit.Test;
+
+/**
+ *
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+public class IniFileJournalTest {
+
+    @Test
+    public void testChangesAreReplayed() throws Exception {
+        File f = File.createTempFile("journal", ".ini");
+        File j = new File(f.getPath() + ".journal");
+        try {
+            IniFile ini = new IniFile(f);
+            ini.section("a").set("x", "1", "comment");
+            ini.section("a").unnamedList().add("first");
+            ini.section("b").set("y", "2");
+            ini.save();
+            long baseLength = f.length();
+
+            ini.setJournalEnabled(true);
+            ini.enableAutoSave();
+            ini.section("a").set("x", "one\ttwo");
+            ini.section("a").setComment("x", null);
+            ini.section("a").unnamedList().add("second");
+            ini.section("b").remove("y");
+            ini.section("b").set("y", "3");
+            ini.section("c").setComment("new\nsection");
+            ini.section(null).set("top", " ");
+
+            assert f.length() == baseLength;
+            assert j.exists();
+
+            IniFile loaded = new IniFile(f);
+            assert IniStringUtil.iniToString(loaded).equals(IniStringUtil.iniToString(ini));
+            assert !loaded.isModified();
+
+            ini.compact();
+            assert !j.exists();
+            assert IniStringUtil.iniToString(new IniFile(f)).equals(IniStringUtil.iniToString(ini));
+        } finally {
+            f.delete();
+            j.delete();
+        }
+    }
+
+    @Test
+    public void testStaleJournalIsIgnored() throws Exception {
+        File f = File.createTempFile("journal", ".ini");
+        File j = new File(f.getPath() + ".journal");
+        try {
+            IniFile ini = new IniFile(f);
+            ini.setJournalEnabled(true);
+            ini.set("k", "v");
+            ini.save();
+            assert j.exists();
+
+            FileOutputStream out = new FileOutputStream(j, true);
+            out.write("E\t\tpartial".getBytes("UTF-8"));
+            out.close();
+            assert new IniFile(f).get("k").equals("v");
+
+            out = new FileOutputStream(f);
+            out.write("k=replaced\n".getBytes("UTF-8"));
+            out.close();
+            assert new IniFile(f).get("k").equals("replaced");
+            assert !j.exists();
+        } finally {
+            f.delete();
+            j.delete();
+        }
+    }
+
+    @Test
+    public void testAppendAfterTornRecord() throws Exception {
+        File f = File.createTempFile("journal", ".ini");
+        File j = new File(f.getPath() + ".journal");
+        try {
+            IniFile ini = new IniFile(f);
+            ini.setJournalEnabled(true);
+            ini.set("k", "v");
+            ini.save();
+
+            FileOutputStream out = new FileOutputStream(j, true);
+            out.write("E\ta\tx".getBytes("UTF-8"));
+            out.close();
+
+            ini = new IniFile(f);
+            ini.setJournalEnabled(true);
+            ini.set("n", "1");
+            ini.save();
+            assert j.exists();
+
+            IniFile loaded = new IniFile(f);
+            assert loaded.get("k").equals("v");
+            assert loaded.get("n").equals("1");
+            assert loaded.section("a", false) == null;
+        } finally {
+            f.delete();
+            j.delete();
+        }
+    }
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini;
+
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+
+/**
+ *
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+public class IniFileRegistryTest {
+
+    private static File temp(String text) throws Exception {
+        File f = File.createTempFile("registry", ".ini");
+        f.deleteOnExit();
+        IniFile ini = new IniFile(f);
+        ini.section("s").set("k", text);
+        ini.save();
+        return f;
+    }
+
+    @Test
+    public void testCanonicalPath() throws Exception {
+        File f = temp("1");
+        IniFileRegistry r = new IniFileRegistry();
+        IniFile ini = r.get(f);
+        File alias = new File(new File(f.getParentFile(), "."), f.getName());
+        assert r.get(alias) == ini;
+        assert r.getMisses() == 1;
+        assert r.getHits() == 1;
+        assert ini.section("s").get("k").equals("1");
+    }
+
+    @Test
+    public void testLoadedOnce() throws Exception {
+        final File f = temp("1");
+        final IniFileRegistry r = new IniFileRegistry();
+        final CountDownLatch start = new CountDownLatch(1);
+        final IniFile[] result = new IniFile[16];
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < result.length; i++) {
+            final int n = i;
+            Thread t = new Thread() {
+
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        result[n] = r.get(f);
+                    } catch (Exception ex) {
+                        throw new RuntimeException(ex);
+                    }
+                }
+
+            };
+            t.start();
+            threads.add(t);
+        }
+        start.countDown();
+        for (Thread t : threads)
+            t.join();
+        for (IniFile ini : result)
+            assert ini != null && ini == result[0];
+        assert r.getMisses() == 1;
+        assert r.getHits() == result.length - 1;
+    }
+
+    private static boolean collected(WeakReference<?> ref) throws InterruptedException {
+        for (int i = 0; i < 100 && ref.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        return ref.get() == null;
+    }
+
+    @Test
+    public void testEvictsCleanInstances() throws Exception {
+        File a = temp("a"), b = temp("b");
+        IniFileRegistry r = new IniFileRegistry(1, IniFileRegistry.Retention.NONE);
+        IniFile ia = r.get(a);
+        IniFile ib = r.get(b);
+        assert r.getEvictions() == 1;
+        assert r.get(b) == ib;
+        assert r.get(a) == ia; // still reachable, so it is not loaded again
+        assert r.getMisses() == 2;
+    }
+
+    @Test
+    public void testEvictedInstanceCollected() throws Exception {
+        File a = temp("a"), b = temp("b"), c = temp("c");
+        for (IniFileRegistry.Retention retention : new IniFileRegistry.Retention[] {IniFileRegistry.Retention.NONE, IniFileRegistry.Retention.WEAK}) {
+            IniFileRegistry r = new IniFileRegistry(1, retention);
+            IniFile ia = r.get(a);
+            ia.section("s").set("k", retention.name());
+            WeakReference<IniFile> probe = new WeakReference<IniFile>(ia);
+            ia = null;
+            IniFile ib = r.get(b);
+            IniFile ic = r.get(c);
+            System.gc();
+            assert probe.get() != null; // modified, so not evicted
+            probe.get().save();
+            assert r.get(b) == ib;
+            assert r.get(c) == ic;
+            assert collected(probe);
+            assert r.get(a).section("s").get("k").equals(retention.name());
+            assert r.getMisses() == 4;
+            assert r.size() == 3;
+        }
+    }
+
+    @Test
+    public void testSoftRetention() throws Exception {
+        File a = temp("a"), b = temp("b");
+        IniFileRegistry r = new IniFileRegistry(1, IniFileRegistry.Retention.SOFT);
+        IniFile ia = r.get(a);
+        r.get(b);
+        assert r.getEvictions() == 1;
+        assert r.get(a) == ia; // still retained
+        assert r.getMisses() == 2;
+        assert r.size() == 2;
+    }
+
+    @Test
+    public void testPreload() throws Exception {
+        List<File> files = new ArrayList<File>();
+        for (int i = 0; i < 8; i++)
+            files.add(temp(String.valueOf(i)));
+        IniFileRegistry r = new IniFileRegistry();
+        List<IniFile> loaded = r.preload(files);
+        assert loaded.size() == files.size();
+        for (int i = 0; i < files.size(); i++) {
+            assert loaded.get(i).section("s").get("k").equals(String.valueOf(i));
+            assert r.get(files.get(i)) == loaded.get(i);
+        }
+        assert r.getMisses() == files.size();
+        assert r.preload(Arrays.asList(files.get(0))).get(0) == loaded.get(0);
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import org.junit.Test;
+
+/**
+ *
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+public class IniFileReloadTest {
+
+    private static void write(File f, String text) throws Exception {
+        FileOutputStream out = new FileOutputStream(f);
+        out.write(text.getBytes("UTF-8"));
+        out.close();
+        f.setLastModified(f.lastModified() + 2000); // make change visible on coarse timestamps
+    }
+
+    @Test
+    public void testReloadMergesDiskChanges() throws Exception {
+        File f = File.createTempFile("reload", ".ini");
+        try {
+            write(f, "[a]\nx=1\ny=2\n[b]\nz=3\n");
+            IniFile ini = new IniFile(f);
+            ini.setHotReload(true);
+            Ini.Section a = ini.section("a");
+            Ini.Section b = ini.section("b", false);
+            int version = b.getVersion();
+            ini.section("a").set("local", "unsaved");
+
+            write(f, "[a]\nx=10\n[b]\nz=3\n[c]\nnew=1\n");
+            assert ini.isChangedOnDisk();
+            ini.reload();
+            assert a.get("x").equals("10");
+            assert !a.isSet("y");
+            assert a.get("local").equals("unsaved");
+            assert ini.section("c").get("new", 0) == 1;
+            assert b.getVersion() == version;
+            assert ini.isModified();
+            assert !ini.isChangedOnDisk();
+
+            ini.save();
+            assert !ini.isChangedOnDisk();
+            assert new IniFile(f).section("a").get("local").equals("unsaved");
+            ini.setHotReload(false);
+        } finally {
+            f.delete();
+        }
+    }
+
+    @Test
+    public void testWatcherReloads() throws Exception {
+        File f = File.createTempFile("reload", ".ini");
+        try {
+            write(f, "k=1\n");
+            IniFile ini = new IniFile(f);
+            ini.enableAutoSave();
+            ini.setHotReload(true);
+            write(f, "k=2\n");
+            long deadline = System.currentTimeMillis() + 10000;
+            while (ini.get("k", 0) != 2 && System.currentTimeMillis() < deadline)
+                Thread.sleep(20);
+            ini.setHotReload(false);
+            assert ini.get("k", 0) == 2;
+            assert !ini.isModified();
+        } finally {
+            f.delete();
+        }
+    }
+
+}
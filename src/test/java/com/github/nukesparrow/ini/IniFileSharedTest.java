@@ -0,0 +1,189 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Instances of the same file stand for different processes
+ *
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+public class IniFileSharedTest {
+
+    private static IniFile shared(File f) throws Exception {
+        IniFile ini = new IniFile(f);
+        ini.setShared(true);
+        ini.setCheckInterval(0);
+        return ini;
+    }
+
+    private static void delete(File f) {
+        f.delete();
+        IniFileLock.lockFile(f).delete();
+    }
+
+    @Test
+    public void testSaveMerges() throws Exception {
+        File f = File.createTempFile("shared", ".ini");
+        try {
+            IniFile a = shared(f);
+            IniFile b = shared(f);
+            a.section("s").set("a", 1);
+            b.section("s").set("b", 2);
+            a.section("s").set("both", "a");
+            b.section("s").set("both", "b");
+            a.save();
+            b.save();
+
+            assert b.section("s").get("a").equals("1");
+            IniFile c = new IniFile(f);
+            assert c.section("s").get("a").equals("1");
+            assert c.section("s").get("b").equals("2");
+            assert c.section("s").get("both").equals("b");
+            assert !b.isModified();
+
+            assert a.refresh();
+            assert a.section("s").get("b").equals("2");
+            assert a.section("s").get("both").equals("b");
+            assert !a.isModified();
+            assert !a.refresh();
+        } finally {
+            delete(f);
+        }
+    }
+
+    @Test
+    public void testRefreshChecksContent() throws Exception {
+        File f = File.createTempFile("shared", ".ini");
+        try {
+            IniFile a = shared(f);
+            a.section("s").set("k", 1);
+            a.save();
+            IniFile b = shared(f);
+
+            f.setLastModified(f.lastModified() + 2000);
+            assert !b.refresh(); // touched, not changed
+
+            b.setCheckInterval(TimeUnit.HOURS.toMillis(1));
+            assert !b.refresh();
+            a.section("s").set("k", 2);
+            a.save();
+            assert !b.refresh(); // not checked until interval passes
+            assert b.section("s").get("k").equals("1");
+            b.setCheckInterval(0);
+            assert b.refresh();
+            assert b.section("s").get("k").equals("2");
+        } finally {
+            delete(f);
+        }
+    }
+
+    @Test
+    public void testSharedAfterFileReplaced() throws Exception {
+        File f = File.createTempFile("shared", ".ini");
+        try {
+            IniFile a = new IniFile(f);
+            IniFile b = shared(f);
+            b.section("s").set("b", 1);
+            b.save();
+
+            a.setShared(true); // file has changed since a has read it
+            a.setCheckInterval(0);
+            a.section("s").set("a", 2);
+            a.save();
+            IniFile c = new IniFile(f);
+            assert c.section("s").get("b").equals("1");
+            assert c.section("s").get("a").equals("2");
+        } finally {
+            delete(f);
+        }
+    }
+
+    @Test
+    public void testConcurrentWriters() throws Exception {
+        final File f = File.createTempFile("shared", ".ini");
+        try {
+            List<Thread> threads = new ArrayList<Thread>();
+            for (int i = 0; i < 4; i++) {
+                final String name = "w" + i;
+                Thread t = new Thread() {
+
+                    @Override
+                    public void run() {
+                        try {
+                            IniFile ini = shared(f);
+                            for (int n = 0; n < 20; n++) {
+                                ini.section(name).set(String.valueOf(n), n);
+                                ini.save();
+                            }
+                        } catch (Exception ex) {
+                            throw new RuntimeException(ex);
+                        }
+                    }
+
+                };
+                t.start();
+                threads.add(t);
+            }
+            for (Thread t : threads)
+                t.join();
+
+            IniFile ini = new IniFile(f);
+            for (int i = 0; i < 4; i++)
+                for (int n = 0; n < 20; n++)
+                    assert ini.section("w" + i).get(String.valueOf(n), -1) == n;
+        } finally {
+            delete(f);
+        }
+    }
+
+    @Test
+    public void testSaveAllLocksFileOnce() throws Exception {
+        File f = File.createTempFile("shared", ".ini");
+        try {
+            IniFile a = shared(f);
+            IniFile b = shared(f);
+            a.section("s").set("a", 1);
+            b.section("s").set("b", 2);
+            List<IniFile> group = new ArrayList<IniFile>();
+            group.add(a);
+            group.add(b);
+            IniFile.saveAll(group);
+            IniFile c = new IniFile(f);
+            assert c.section("s").get("a").equals("1");
+            assert c.section("s").get("b").equals("2");
+
+            synchronized (a) {
+                a.section("s").set("a", 3);
+                try {
+                    a.save();
+                    assert false;
+                } catch (IllegalStateException ex) {
+                }
+            }
+            a.save();
+            assert new IniFile(f).section("s").get("a").equals("3");
+        } finally {
+            delete(f);
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+public class IniKeyTest {
+
+    private static void testKeys(Ini ini) {
+        IniKey<Integer> pool = IniKey.ofInt(ini, "db", "poolSize", 10);
+        IniKey<String> name = IniKey.ofString(ini, "", "name", "none");
+        IniKey<Boolean> debug = IniKey.ofBoolean(ini, "db", "debug", false);
+
+        assert pool.get() == 10;
+        assert name.get().equals("none");
+        assert ini.section("db", false) == null; // missing section is not allocated
+
+        ini.section("db", true).set("poolSize", 20);
+        assert pool.get() == 20;
+        assert !debug.get();
+
+        ini.section("other", true).set("x", 1);
+        assert pool.get() == 20;
+
+        pool.set(30);
+        debug.set(true);
+        assert pool.get() == 30;
+        assert debug.get();
+        assert ini.section("db").get("poolSize", 0) == 30;
+
+        ini.section(null, true).set("name", "top");
+        assert name.get().equals("top");
+
+        ini.removeSection("db");
+        assert pool.get() == 10;
+        ini.section("db", true).set("poolSize", 40);
+        assert pool.get() == 40;
+
+        ini.transaction(new IniTransaction.Callback() {
+
+            public void run(IniTransaction tx) {
+                tx.set("db", "poolSize", 50);
+            }
+
+        });
+        assert pool.get() == 50;
+    }
+
+    @Test
+    public void testIni() {
+        testKeys(new Ini());
+    }
+
+    @Test
+    public void testConcurrentIni() {
+        testKeys(new ConcurrentIni());
+    }
+
+}
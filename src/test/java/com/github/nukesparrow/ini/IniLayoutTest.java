@@ -0,0 +1,142 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ *
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+public class IniLayoutTest {
+
+    private static void write(File f, String text) throws Exception {
+        FileOutputStream out = new FileOutputStream(f);
+        try {
+            out.write(text.getBytes("US-ASCII"));
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String read(File f) throws Exception {
+        return new String(IniJournal.readAll(f), "US-ASCII");
+    }
+
+    private static IniFile load(File f) throws Exception {
+        boolean p = IniFile.isPreserveFormat();
+        IniFile.setPreserveFormat(true);
+        try {
+            return new IniFile(f);
+        } finally {
+            IniFile.setPreserveFormat(p);
+        }
+    }
+
+    /**
+     * Content of ini as it would be read after regular save
+     */
+    private static String roundTrip(Ini ini) {
+        return IniStringUtil.iniToString(IniStringUtil.parseIni(IniStringUtil.iniToString(ini)));
+    }
+
+    @Test
+    public void testUnchangedSectionsAreCopied() throws Exception {
+        File f = File.createTempFile("layout", ".ini");
+        try {
+            String a = "# hand written\n[a]\n  key   =   value   # not a comment\n\n\n";
+            String b = "#b\n\n#comment\n[b]\nx=1\n";
+            write(f, "top = 1\n" + a + b + "# dangling");
+            IniFile ini = load(f);
+            ini.section("b").set("x", 2);
+            ini.compact();
+            assert read(f).startsWith("top = 1\n" + a + "\n#b\n#comment\n[b]\n\nx=2\n");
+            assert read(f).endsWith("# dangling");
+
+            ini.section("c").set("new", "section");
+            ini.save();
+            assert read(f).startsWith("top = 1\n" + a);
+            assert IniStringUtil.iniToString(load(f)).equals(IniStringUtil.iniToString(ini));
+        } finally {
+            f.delete();
+        }
+    }
+
+    @Test
+    public void testSavedFileMatchesModel() throws Exception {
+        Random r = new Random(7);
+        File f = File.createTempFile("layout", ".ini");
+        try {
+            for (int round = 0; round < 200; round++) {
+                StringBuilder t = new StringBuilder();
+                int lines = r.nextInt(40);
+                int sections = 0;
+                for (int i = 0; i < lines; i++) {
+                    int kind = r.nextInt(7);
+                    String nl = r.nextInt(4) == 0 ? "\r\n" : "\n";
+                    if (kind == 0)
+                        t.append("# c").append(i).append(nl);
+                    else if (kind == 1)
+                        t.append(nl);
+                    else if (kind == 2)
+                        t.append(" [s").append(sections++).append("] ").append(nl);
+                    else if (kind == 3)
+                        t.append("item").append(i).append(nl);
+                    else
+                        t.append("key").append(r.nextInt(5)).append(" =  v").append(i).append(nl);
+                }
+                if (r.nextBoolean() && t.length() > 0)
+                    t.setLength(t.length() - 1);
+                write(f, t.toString());
+
+                IniFile ini = load(f);
+                assert ByteIniParserTest.dump(ini).equals(ByteIniParserTest.dump(IniStringUtil.parseIni(t.toString())));
+                for (int save = 0; save < 3; save++) {
+                    for (int m = r.nextInt(4); m > 0; m--) {
+                        String s = r.nextInt(4) == 0 ? null : "s" + r.nextInt(sections + 2);
+                        switch (r.nextInt(6)) {
+                            case 0:
+                                ini.section(s).set("key" + r.nextInt(5), "m" + m);
+                                break;
+                            case 1:
+                                ini.section(s).remove("key" + r.nextInt(5));
+                                break;
+                            case 2:
+                                ini.section(s).setComment(r.nextBoolean() ? null : "sc" + m);
+                                break;
+                            case 3:
+                                ini.section(s).unnamedList().add("added" + m);
+                                break;
+                            case 4:
+                                ini.removeSection(s);
+                                break;
+                            default:
+                                ini.section(s).set("key" + r.nextInt(5), "m" + m, "ec");
+                        }
+                    }
+                    ini.compact();
+                    assert IniStringUtil.iniToString(load(f)).equals(roundTrip(ini)) : t + "\n---\n" + read(f);
+                }
+            }
+        } finally {
+            f.delete();
+        }
+    }
+
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Test;
+
+/**
+ *
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+public class IniLiveBindingTest {
+
+    public static class Pool {
+
+        public int size;
+        public String name;
+        public long timeout;
+
+    }
+
+    private static void testLive(Ini ini) {
+        Ini.Section s = ini.section("pool", true);
+        s.set("size", 4);
+        s.set("name", "main");
+
+        final List<Set<String>> changes = new ArrayList<Set<String>>();
+        IniLiveBinding<Pool> live = IniUtil.bindLive(s, new Pool(), new IniLiveBinding.Listener<Pool>() {
+
+            public void changed(Pool obj, Set<String> keys) {
+                changes.add(new HashSet<String>(keys));
+            }
+
+        });
+        Pool p = live.get();
+        assert p.size == 4 && p.name.equals("main") && p.timeout == 0;
+        assert changes.isEmpty();
+
+        s.set("size", 8);
+        assert p.size == 8;
+        assert changes.size() == 1 && changes.get(0).equals(new HashSet<String>(Arrays.asList("size")));
+
+        s.set("size", 8);
+        ini.section("other", true).set("size", 1);
+        assert p.size == 8;
+        assert changes.size() == 1;
+
+        ini.transaction(new IniTransaction.Callback() {
+
+            public void run(IniTransaction tx) {
+                tx.set("pool", "name", "backup");
+                tx.set("pool", "timeout", 30);
+            }
+
+        });
+        assert p.name.equals("backup") && p.timeout == 30;
+        assert changes.size() == 2 && changes.get(1).equals(new HashSet<String>(Arrays.asList("name", "timeout")));
+
+        s.set("timeout", "never");
+        s.set("size", 16);
+        assert p.size == 8 && p.timeout == 30; // conversion failure leaves object unchanged
+        s.set("timeout", 60);
+        assert p.size == 16 && p.timeout == 60;
+        assert changes.size() == 3;
+
+        live.close();
+        s.set("size", 32);
+        assert p.size == 16;
+        assert !live.refresh();
+        assert changes.size() == 3;
+    }
+
+    /**
+     * One thread changes other section while it holds monitor of object,
+     * another one changes bound section
+     */
+    @Test
+    public void testNoDeadlock() throws Exception {
+        final Ini ini = new ConcurrentIni();
+        final Ini.Section s = ini.section("pool", true);
+        final boolean[] locked = {false};
+        final IniLiveBinding<Pool> live = IniUtil.bindLive(s, new Pool(), new IniLiveBinding.Listener<Pool>() {
+
+            public void changed(Pool obj, Set<String> keys) {
+                if (Thread.holdsLock(s))
+                    locked[0] = true;
+            }
+
+        });
+        final int n = 20000;
+        Thread holder = new Thread() {
+
+            @Override
+            public void run() {
+                for (int i = 0; i < n; i++) {
+                    synchronized (live.get()) {
+                        ini.section("other", true).set("x", i);
+                    }
+                }
+            }
+
+        };
+        Thread writer = new Thread() {
+
+            @Override
+            public void run() {
+                for (int i = 0; i < n; i++)
+                    s.set("size", i);
+            }
+
+        };
+        holder.setDaemon(true);
+        writer.setDaemon(true);
+        holder.start();
+        writer.start();
+        holder.join(30000);
+        writer.join(30000);
+        assert !holder.isAlive() && !writer.isAlive();
+        assert live.get().size == n - 1;
+        assert !locked[0];
+    }
+
+    @Test
+    public void testFileReload() throws Exception {
+        File f = File.createTempFile("live", ".ini");
+        try {
+            IniFile ini = new IniFile(f);
+            ini.section("pool").set("size", 4);
+            ini.save();
+            final List<Set<String>> changes = new ArrayList<Set<String>>();
+            IniLiveBinding<Pool> live = IniUtil.bindLive(ini.section("pool"), new Pool(), new IniLiveBinding.Listener<Pool>() {
+
+                public void changed(Pool obj, Set<String> keys) {
+                    changes.add(new HashSet<String>(keys));
+                }
+
+            });
+            assert live.get().size == 4;
+
+            FileOutputStream out = new FileOutputStream(f);
+            out.write("[pool]\nsize=9\nname=reloaded\n".getBytes("UTF-8"));
+            out.close();
+            ini.reload();
+            assert live.get().size == 9 && live.get().name.equals("reloaded");
+            assert changes.size() == 1 && changes.get(0).equals(new HashSet<String>(Arrays.asList("size", "name")));
+            live.close();
+        } finally {
+            f.delete();
+        }
+    }
+
+    @Test
+    public void testIni() {
+        testLive(new Ini());
+    }
+
+    @Test
+    public void testConcurrentIni() {
+        testLive(new ConcurrentIni());
+    }
+
+}
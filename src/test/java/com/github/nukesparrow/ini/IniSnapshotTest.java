@@ -0,0 +1,116 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini;
+
+import java.util.Arrays;
+import org.junit.Test;
+
+/**
+ *
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+public class IniSnapshotTest {
+
+    @Test
+    public void testSnapshotIsImmutableAndShared() {
+        for (Ini ini : new Ini[] {new Ini(), new ConcurrentIni()}) {
+            ini.set("top", 1);
+            ini.section("a").set("x", "1", "comment");
+            ini.section("a").unnamedList().addAll(Arrays.asList("5", "6"));
+            ini.section("b").set("y", "2");
+            ini.section("b").setComment("about b");
+
+            IniSnapshot s1 = ini.snapshot();
+            assert s1.getVersion() == ini.getVersion();
+            assert s1.toString().equals(ini.toString());
+            assert ini.snapshot() == s1;
+            assert s1.get("top", 0) == 1;
+            assert Arrays.equals(s1.section("a").unnamedInts(), new int[] {5, 6});
+            assert s1.section("a").unnamedList().get(1).equals("6");
+            assert s1.section("missing").get("k", "def").equals("def");
+            assert s1.section("missing", false) == null;
+
+            ini.section("b").set("y", "3");
+            IniSnapshot s2 = ini.snapshot();
+            assert s2 != s1;
+            assert s1.section("b").get("y").equals("2");
+            assert s2.section("b").get("y").equals("3");
+            assert s2.section("a") == s1.section("a");
+            assert s2.section(null) == s1.section(null);
+            assert s2.toString().equals(ini.toString());
+
+            ini.removeSection("a");
+            assert ini.snapshot().section("a", false) == null;
+            assert s2.section("a").get("x").equals("1");
+
+            try {
+                s2.section("b").set("y", "4");
+                assert false;
+            } catch (UnsupportedOperationException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void testHolder() {
+        Ini ini = new Ini();
+        ini.section("db").set("poolSize", 10);
+        IniSnapshotHolder h = new IniSnapshotHolder();
+        IniSnapshot old = ini.snapshot();
+        assert h.publish(ini) == old;
+
+        ini.section("db").set("poolSize", 20);
+        ini.section("other").set("k", "v");
+        IniSnapshot current = h.publish(ini);
+        assert h.get().section("db").get("poolSize", 0) == 20;
+        h.set(old);
+        h.set(current);
+        assert h.publish(ini) == current;
+
+        IniSnapshot updated = h.set("db", "poolSize", "30");
+        assert updated.getVersion() == current.getVersion();
+        assert updated.getRevision() == current.getRevision() + 1;
+        assert updated.section("other") == current.section("other");
+        assert current.section("db").get("poolSize", 0) == 20;
+        assert h.get().section("db").get("poolSize", 0) == 30;
+        assert h.remove("db", "poolSize").section("db").properties().isEmpty();
+        assert h.remove("db", "poolSize") == h.get();
+
+        h.set("db", "a", "1");
+        h.set("db", "b", "2");
+        assert h.publish(ini).section("db").get("a").equals("1"); // local changes are newer
+        ini.section("db").set("poolSize", 40);
+        assert h.publish(ini).section("db").get("poolSize", 0) == 40;
+    }
+
+    @Test
+    public void testDerivedSnapshotDoesNotChangeOlder() {
+        Ini ini = new Ini();
+        ini.section("s").set("k", "1");
+        IniSnapshot s1 = ini.snapshot();
+        Ini.SectionEntry e = s1.section("s").properties().get(0);
+        assert e.getSection() == s1.section("s");
+
+        IniSnapshot s2 = s1.set("s", "other", "2");
+        ini.section("s").set("other", "3");
+        IniSnapshot s3 = ini.snapshot();
+        assert e.getSection() == s1.section("s");
+        assert s2.section("s").properties().get(0).getSection() == s2.section("s");
+        assert s3.section("s").properties().get(0).getSection() == s3.section("s");
+        assert !s1.section("s").isSet("other");
+    }
+
+}
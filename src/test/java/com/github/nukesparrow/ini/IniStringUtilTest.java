@@ -0,0 +1,79 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini;
+
+import java.io.StringWriter;
+import org.junit.Test;
+
+/**
+ *
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+public class IniStringUtilTest {
+
+    @Test
+    public void testEscapeRoundTrip() {
+        StringBuilder t = new StringBuilder();
+        for (char c = 0; c <= 0xff; c++)
+            t.append(c);
+        String s = " " + t + " ";
+        assert s.equals(IniStringUtil.unescape(IniStringUtil.escape(s)));
+    }
+
+    @Test
+    public void testUnchangedStringsAreReturned() {
+        String s = "plain value";
+        assert IniStringUtil.escape(s) == s;
+        assert IniStringUtil.unescape(s) == s;
+    }
+
+    @Test
+    public void testUnescape() {
+        assert "a b%".equals(IniStringUtil.unescape("a+b%25"));
+        assert "%zz%".equals(IniStringUtil.unescape("%zz%"));
+        assert "￱\u0001".equals(IniStringUtil.unescape("%-F%+1"));
+
+        StringBuilder b = new StringBuilder("x");
+        IniStringUtil.unescape("[a+b%3D]", 1, 7, b);
+        assert "xa b=".equals(b.toString());
+
+        char[] d = new char[8];
+        int n = IniStringUtil.unescape("a%3Db", 0, 5, d, 2);
+        assert n == 5 && "a=b".equals(new String(d, 2, 3));
+    }
+
+    @Test
+    public void testWriterMatchesBuildIni() throws Exception {
+        Ini ini = new Ini();
+        ini.section(null).setComment("top\ncomment");
+        ini.section(null).set("a", " b ");
+        ini.section("s=]").unnamedList().add("x=y");
+        ini.section("s=]").set("k", "v", "entry");
+        ini.section("s=]").setComment("section");
+        ini.section("empty").setComment("only comment");
+
+        StringWriter sw = new StringWriter();
+        IniWriter w = new IniWriter(sw);
+        w.section(null, "top\ncomment").entry("a", " b ");
+        w.section("s=]", "section").unnamed("x=y").entry("k", "v", "entry");
+        w.section("empty", "only comment");
+        w.close();
+
+        assert IniStringUtil.iniToString(ini).equals(sw.toString());
+        assert "\n".equals(IniStringUtil.iniToString(new Ini()));
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini;
+
+import java.io.File;
+import org.junit.Test;
+
+/**
+ *
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+public class IniTransactionTest {
+
+    @Test
+    public void testCommitBumpsVersionOnce() {
+        for (Ini ini : new Ini[] {new Ini(), new ConcurrentIni()}) {
+            ini.section("db").set("host", "old");
+            ini.section("gone").set("k", "v");
+            int version = ini.getVersion();
+
+            IniTransaction tx = ini.begin();
+            tx.set("db", "host", "new").set("db", "port", 5432, "port comment");
+            tx.remove("db", "missing");
+            tx.removeSection("gone").set("gone", "fresh", 1);
+            tx.setComment(null, "top").set(null, "top", true);
+            assert tx.get("db", "host").equals("new");
+            assert tx.section("db").get("port", 0) == 5432;
+            assert !tx.isSet("gone", "k");
+            assert tx.section(null).get("top", false);
+            assert ini.section("db").get("host").equals("old");
+            assert ini.getVersion() == version;
+            tx.commit();
+
+            assert ini.getVersion() == version + 1;
+            assert ini.section("db").get("host").equals("new");
+            assert ini.section("db").getComment("port").equals("port comment");
+            assert !ini.section("gone").isSet("k");
+            assert ini.section("gone").get("fresh", 0) == 1;
+            assert ini.section(null).getComment().equals("top");
+            assert !tx.isOpen();
+        }
+    }
+
+    @Test
+    public void testRollback() {
+        Ini ini = new Ini();
+        ini.set("k", "v");
+        int version = ini.getVersion();
+        try {
+            ini.transaction(new IniTransaction.Callback() {
+                public void run(IniTransaction tx) {
+                    tx.set(null, "k", "changed");
+                    throw new IllegalStateException();
+                }
+            });
+            assert false;
+        } catch (IllegalStateException expected) {
+        }
+        assert ini.get("k").equals("v");
+        assert ini.getVersion() == version;
+    }
+
+    @Test
+    public void testSingleAutoSave() throws Exception {
+        final File f = File.createTempFile("transaction", ".ini");
+        try {
+            final IniFile ini = new IniFile(f);
+            ini.enableAutoSave();
+            ini.transaction(new IniTransaction.Callback() {
+                public void run(IniTransaction tx) {
+                    for (int i = 0; i < 20; i++)
+                        tx.set("s", "k" + i, i);
+                }
+            });
+            assert ini.getSaveCount() == 1;
+            assert !ini.isModified();
+            ini.section("s").set("k0", "changed");
+            assert ini.getSaveCount() == 2;
+            assert new IniFile(f).section("s").get("k19", 0) == 19;
+        } finally {
+            f.delete();
+        }
+    }
+
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini;
+
+import com.github.nukesparrow.virtfs.VFilesystem;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ *
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+public class IniUtilTest {
+
+    public static class Point {
+
+        public int x;
+        public long y;
+        public Integer boxed;
+        @IniKeyName("label")
+        public String name;
+        public File file;
+        public TimeUnit unit;
+        public StringBuilder text;
+        public final int fixed = 1;
+
+        private double ratio;
+        private boolean enabled;
+
+        public void setRatio(double ratio) {
+            this.ratio = ratio;
+        }
+
+        @IniKeyName("on")
+        public void enable(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public void setFailing(String value) {
+            throw new IllegalStateException(value);
+        }
+
+    }
+
+    public static class Celsius {
+
+        final double degrees;
+
+        Celsius(double degrees) {
+            this.degrees = degrees;
+        }
+
+    }
+
+    public static class Box {
+
+        public Object value;
+
+    }
+
+    public static class Weather {
+
+        public Celsius temperature;
+
+    }
+
+    public static class Bound {
+
+        public int x;
+        boolean boundByBinder = false;
+
+    }
+
+    /**
+     * Written as ini-processor would generate it, registered in
+     * META-INF/services of test resources
+     */
+    public static final class BoundBinder implements IniBinder<Bound> {
+
+        public Class<Bound> getType() {
+            return Bound.class;
+        }
+
+        public Bound load(IniProperties properties, Bound obj, VFilesystem vfs) {
+            String v;
+            if ((v = properties.get("x")) != null)
+                obj.x = Integer.parseInt(v);
+            obj.boundByBinder = true;
+            return obj;
+        }
+
+        public Bound create(IniProperties properties, VFilesystem vfs) {
+            return load(properties, new Bound(), vfs);
+        }
+
+    }
+
+    @Test
+    public void testBinder() {
+        Ini.Section s = new Ini().section("b", true);
+        s.set("x", 3);
+        assert IniUtil.binder(Bound.class) instanceof BoundBinder;
+        assert IniUtil.binder(Point.class) == null;
+
+        Bound b = IniUtil.loadPOJO(s, new Bound());
+        assert b.boundByBinder && b.x == 3;
+        b = IniUtil.create(s, Bound.class);
+        assert b.boundByBinder && b.x == 3;
+        try {
+            IniUtil.create(s, Point.class);
+            assert false;
+        } catch (IllegalArgumentException ex) {
+        }
+    }
+
+    @Test
+    public void testLoadPOJO() {
+        Ini.Section s = new Ini().section("p", true);
+        s.set("x", 3);
+        s.set("y", 4);
+        s.set("boxed", 5);
+        s.set("label", "origin");
+        s.set("file", "a.txt");
+        s.set("unit", "SECONDS");
+        s.set("text", "abc");
+        s.set("ratio", 0.5);
+        s.set("on", true);
+
+        for (int i = 0; i < 3; i++) {
+            Point p = IniUtil.loadPOJO(s, new Point());
+            assert p.x == 3;
+            assert p.y == 4;
+            assert p.boxed == 5;
+            assert p.name.equals("origin");
+            assert p.file.equals(new File("a.txt"));
+            assert p.unit == TimeUnit.SECONDS;
+            assert p.text.toString().equals("abc");
+            assert p.ratio == 0.5;
+            assert p.enabled;
+        }
+
+        Point p = new Point();
+        p.x = 7;
+        IniUtil.loadPOJO(new Ini().section("empty"), p);
+        assert p.x == 7;
+    }
+
+    @Test
+    public void testFailures() {
+        Ini.Section s = new Ini().section("p", true);
+        s.set("x", "not a number");
+        try {
+            IniUtil.loadPOJO(s, new Point());
+            assert false;
+        } catch (NumberFormatException ex) {
+        }
+
+        s = new Ini().section("p", true);
+        s.set("failing", "boom");
+        try {
+            IniUtil.loadPOJO(s, new Point());
+            assert false;
+        } catch (RuntimeException ex) {
+            assert ex.getCause().getCause() instanceof IllegalStateException;
+        }
+
+        s = new Ini().section("p", true);
+        s.set("fixed", 2);
+        try {
+            IniUtil.loadPOJO(s, new Point());
+            assert false;
+        } catch (RuntimeException ex) {
+            assert ex.getCause() instanceof IllegalAccessException;
+        }
+
+        s = new Ini().section("b", true);
+        s.set("value", "20");
+        try {
+            IniUtil.loadPOJO(s, new Box());
+            assert false;
+        } catch (IllegalArgumentException ex) {
+            assert ex.getMessage().startsWith("Type conversion failed");
+        }
+    }
+
+    @Test
+    public void testConverter() {
+        Ini.Section s = new Ini().section("w", true);
+        s.set("temperature", "20C");
+        IniUtil.registerConverter(Celsius.class, new IniUtil.Converter<Celsius>() {
+
+            public Celsius convert(String value, VFilesystem vfs) {
+                return new Celsius(Double.parseDouble(value.substring(0, value.length() - 1)));
+            }
+
+        });
+        assert IniUtil.loadPOJO(s, new Weather()).temperature.degrees == 20;
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+
+/**
+ *
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+public class ParallelIniParserTest {
+
+    private static ParallelIniParser parser(Ini ini, ForkJoinPool pool, int chunk) {
+        ParallelIniParser p = new ParallelIniParser(ini, Charset.forName("UTF-8"), pool);
+        p.threshold = 0;
+        p.minChunkSize = chunk;
+        return p;
+    }
+
+    @Test
+    public void testBelowThresholdIsSequential() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ParallelIniParser p = new ParallelIniParser(new Ini(), Charset.forName("UTF-8"), pool);
+            StringBuilder t = new StringBuilder();
+            while (t.length() < ParallelIniParser.PARALLEL_THRESHOLD / 2)
+                t.append("key = value\n");
+            p.parse(ByteBuffer.wrap(t.toString().getBytes(Charset.forName("UTF-8"))));
+            assert pool.getStealCount() == 0 && pool.getQueuedSubmissionCount() == 0 && pool.getPoolSize() == 0;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testSameAsSequential() throws Exception {
+        Random r = new Random(42);
+        StringBuilder t = new StringBuilder(ByteIniParserTest.SAMPLE).append('\n');
+        for (int i = 0; i < 3000; i++) {
+            int kind = r.nextInt(8);
+            String nl = r.nextBoolean() ? "\n" : "\r\n";
+            if (kind == 0)
+                t.append("# comment ").append(i).append(nl);
+            else if (kind == 1)
+                t.append(nl);
+            else if (kind == 2)
+                t.append("  [s").append(r.nextInt(50)).append(']').append(nl);
+            else if (kind == 3)
+                t.append("item").append(i).append(nl);
+            else
+                t.append("key").append(r.nextInt(20)).append(" = v").append(i).append(nl);
+        }
+
+        String expected = ByteIniParserTest.dump(IniStringUtil.parseIni(t.toString()));
+        byte[] bytes = t.toString().getBytes(Charset.forName("UTF-8"));
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int chunk = 7; chunk < 4000; chunk *= 3) {
+                Ini ini = new Ini();
+                ParallelIniParser p = parser(ini, pool, chunk);
+                p.parse(ByteBuffer.wrap(bytes));
+                assert expected.equals(ByteIniParserTest.dump(ini));
+
+                ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+                direct.put(bytes).flip();
+                ini = new Ini();
+                p = parser(ini, pool, chunk);
+                p.parse(direct);
+                assert expected.equals(ByteIniParserTest.dump(ini));
+
+                ini = new Ini();
+                p = parser(ini, pool, chunk);
+                p.setLazyValues(true);
+                p.parse(ByteBuffer.wrap(bytes));
+                assert expected.equals(ByteIniParserTest.dump(ini));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+}
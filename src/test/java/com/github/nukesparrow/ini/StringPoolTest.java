@@ -0,0 +1,63 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini;
+
+import java.nio.ByteBuffer;
+import org.junit.Test;
+
+/**
+ *
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+public class StringPoolTest {
+
+    private static final String DATA = "[db]\nhost=localhost\nport=5432\nurl=jdbc:postgresql://localhost:5432/application\n[list]\na\nb\n";
+
+    private static Ini parse(StringPool pool) {
+        Ini ini = new Ini();
+        ini.setStringPool(pool);
+        new ByteIniParser(ini).parse(ByteBuffer.wrap(DATA.getBytes()));
+        return ini;
+    }
+
+    @Test
+    public void testInstancesShareStrings() {
+        StringPool pool = new StringPool(64, 16);
+        Ini a = parse(pool);
+        Ini b = parse(pool);
+
+        assert IniStringUtil.iniToString(a).equals(IniStringUtil.iniToString(b));
+        assert a.section("db").properties().get(0).getName() == b.section("db").properties().get(0).getName();
+        assert a.section("db").get("host") == b.section("db").get("host");
+        assert a.section("list").unnamedList().get(1) == b.section("list").unnamedList().get(1);
+        assert a.section("db").get("url") != b.section("db").get("url");
+
+        assert pool.getHits() > 0 && pool.getSavedBytes() > 0;
+
+        b.section("db").set("host", new String("localhost"));
+        assert a.section("db").get("host") == b.section("db").get("host");
+    }
+
+    @Test
+    public void testCollisionReplacesSlot() {
+        StringPool pool = new StringPool(1, 16);
+        String x = pool.canonicalize("x");
+        assert pool.canonicalize(new String("y")) != x;
+        assert pool.canonicalize(new String("x")) != x;
+        assert pool.getCapacity() == 1 && pool.getHits() == 0 && pool.getMisses() == 3;
+    }
+
+}
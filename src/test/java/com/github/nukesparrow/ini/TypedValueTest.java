@@ -0,0 +1,80 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini;
+
+import org.junit.Test;
+
+/**
+ * Primitives decoded by typed getters are cached by identity of value
+ * string, so they must not outlive the value.
+ *
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+public class TypedValueTest {
+
+    private static Ini.SectionEntry entry(Ini.Section s, String key) {
+        for (Ini.SectionEntry e : s.properties())
+            if (e.getName().equals(key))
+                return e;
+        return null;
+    }
+
+    private static void testTyped(Ini ini) {
+        Ini.Section s = ini.section("s", true);
+        s.set("k", "5");
+        assert s.get("k", 0) == 5;
+        assert s.get("k", 0) == 5;
+        assert s.get("k", 0L) == 5L; // other type isn't taken from cache
+        assert s.get("k", 0.0) == 5.0;
+
+        s.set("k", "6");
+        assert s.get("k", 0) == 6;
+        assert s.get("k", 0.0) == 6.0;
+
+        s.set("k", new String("6"));
+        assert s.get("k", 0) == 6;
+        s.set("k", "06");
+        assert s.get("k", 0) == 6;
+        assert s.get("k").equals("06");
+
+        entry(s, "k").setValue("7");
+        assert s.get("k", 0) == 7;
+        entry(s, "k").setValue(new String("7"));
+        assert s.get("k", 0) == 7;
+        entry(s, "k").setValue("8");
+        assert s.get("k", 0L) == 8L;
+        assert s.get("k", (short) 0) == 8;
+
+        s.set("k", "");
+        assert s.get("k", 3) == 3;
+        s.set("k", "1.5");
+        assert s.get("k", 0.0) == 1.5;
+        assert s.get("k", 0f) == 1.5f;
+        s.set("k", "2.5");
+        assert s.get("k", 0.0) == 2.5;
+    }
+
+    @Test
+    public void testIni() {
+        testTyped(new Ini());
+    }
+
+    @Test
+    public void testConcurrentIni() {
+        testTyped(new ConcurrentIni());
+    }
+
+}
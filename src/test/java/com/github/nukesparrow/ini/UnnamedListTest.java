@@ -0,0 +1,96 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ *
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+public class UnnamedListTest {
+
+    @Test
+    public void testIndexFollowsStringKeys() {
+        Ini ini = new Ini();
+        Ini.Section s = ini.section("list");
+        List<String> l = s.unnamedList();
+        l.add("10");
+        l.add("20");
+        l.add("30");
+        assert l.equals(Arrays.asList("10", "20", "30"));
+        assert Arrays.equals(s.unnamedInts(), new int[] {10, 20, 30});
+
+        s.set("2", "25");
+        assert l.get(1).equals("25");
+        s.set("count", 2);
+        assert l.size() == 2;
+        assert !((Ini.IniSection) ini.section("list", false)).properties().get(3).isUnnamed();
+        s.set("3", "35");
+        s.set("count", 3);
+        assert Arrays.equals(s.unnamedLongs(), new long[] {10, 25, 35});
+
+        s.remove("2");
+        assert s.getUnnamed(1) == null;
+        assert Arrays.equals(s.unnamedInts(), new int[] {10, 0, 35});
+        s.set("2", "20");
+        assert l.get(1).equals("20");
+
+        s.set("count", 1000);
+        assert s.getUnnamed(2).getValue().equals("35");
+        assert s.getUnnamed(500) == null;
+    }
+
+    @Test
+    public void testIsUnnamed() {
+        Ini ini = IniStringUtil.parseIni("[s]\na\nb\n%2B1=x\n01=y\n3=z\nkey=v\n");
+        StringBuilder b = new StringBuilder();
+        for (Ini.SectionEntry e : ini.section("s").properties())
+            b.append(e.getName()).append(e.isUnnamed() ? "+ " : "- ");
+        assert b.toString().equals("1+ count+ 2+ +1+ 01+ 3- key- ") : b;
+    }
+
+    @Test
+    public void testFormatIsUnchanged() {
+        Ini ini = new Ini();
+        ini.section("s").unnamedList().addAll(Arrays.asList("a", "b"));
+        ini.section("s").set("k", "v");
+        assert IniStringUtil.iniToString(ini).equals("\n\n[s]\n\na\nb\nk=v\n");
+        assert ini.section("s").properties().get(0).getName().equals("count");
+    }
+
+    private static void assertNotList(Ini.Section s) {
+        assert s.unnamedInts().length == 0 && s.unnamedLongs().length == 0;
+        for (Ini.SectionEntry e : s.properties())
+            assert e.isUnnamed() == e.getName().equals("count") : e.getName();
+    }
+
+    @Test
+    public void testCountIsNotNumber() {
+        Ini ini = IniStringUtil.parseIni("[s]\ncount=abc\n1=x\n2=y\n");
+        assertNotList(ini.section("s"));
+        assertNotList(ini.snapshot().section("s"));
+
+        ConcurrentIni c = new ConcurrentIni();
+        Ini.Section s = c.section("s", true);
+        s.set("count", "abc");
+        s.set("1", "x");
+        assertNotList(s);
+    }
+
+}
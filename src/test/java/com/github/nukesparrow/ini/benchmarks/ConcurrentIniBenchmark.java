@@ -0,0 +1,114 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini.benchmarks;
+
+import com.github.nukesparrow.ini.ConcurrentIni;
+import com.github.nukesparrow.ini.Ini;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Throughput of {@link ConcurrentIni} versus {@link Ini}, which every
+ * thread accesses while holding its monitor, with three readers and one
+ * writer per group.
+ *
+ * Run {@link #main(java.lang.String[])} with test classpath.
+ *
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentIniBenchmark {
+
+    private static final int SECTIONS = 16;
+    private static final int KEYS = 32;
+
+    private Ini concurrent;
+    private Ini locked;
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        concurrent = fill(new ConcurrentIni());
+        locked = fill(new Ini());
+    }
+
+    private static Ini fill(Ini ini) {
+        for (int s = 0; s < SECTIONS; s++)
+            for (int k = 0; k < KEYS; k++)
+                ini.section("s" + s, true).set("k" + k, k);
+        return ini;
+    }
+
+    @Benchmark
+    @Group("concurrent")
+    @GroupThreads(3)
+    public int concurrentRead() {
+        int i = (int) (Thread.currentThread().getId() + System.nanoTime());
+        return concurrent.section("s" + (i & (SECTIONS - 1))).get("k" + ((i >>> 4) & (KEYS - 1)), 0);
+    }
+
+    @Benchmark
+    @Group("concurrent")
+    @GroupThreads(1)
+    public void concurrentWrite() {
+        int i = next++;
+        concurrent.section("s" + (i & (SECTIONS - 1))).set("k" + ((i >>> 4) & (KEYS - 1)), i);
+    }
+
+    @Benchmark
+    @Group("synchronized")
+    @GroupThreads(3)
+    public int synchronizedRead() {
+        int i = (int) (Thread.currentThread().getId() + System.nanoTime());
+        synchronized (locked) {
+            return locked.section("s" + (i & (SECTIONS - 1))).get("k" + ((i >>> 4) & (KEYS - 1)), 0);
+        }
+    }
+
+    @Benchmark
+    @Group("synchronized")
+    @GroupThreads(1)
+    public void synchronizedWrite() {
+        int i = next++;
+        synchronized (locked) {
+            locked.section("s" + (i & (SECTIONS - 1))).set("k" + ((i >>> 4) & (KEYS - 1)), i);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ConcurrentIniBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini.benchmarks;
+
+import com.github.nukesparrow.ini.IniStringUtil;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares escaping routines with implementation they have replaced.
+ *
+ * Run {@link #main(java.lang.String[])} with test classpath.
+ *
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EscapeBenchmark {
+
+    @Param({"jdbc:postgresql://db.example.com:5432/app", "two+words%20and%25more"})
+    public String value;
+
+    private String escaped;
+
+    @Setup
+    public void setup() {
+        escaped = IniStringUtil.escape(value);
+    }
+
+    @Benchmark
+    public String unescape() {
+        return IniStringUtil.unescape(escaped);
+    }
+
+    @Benchmark
+    public String unescapeLegacy() {
+        return legacyUnescape(escaped);
+    }
+
+    @Benchmark
+    public String escape() {
+        return IniStringUtil.escape(value);
+    }
+
+    @Benchmark
+    public String escapeLegacy() {
+        return legacyEscape(value);
+    }
+
+    private static final char[] HEXCHARS = "0123456789ABCDEF".toCharArray();
+
+    private static String legacyEscape(String str) {
+        StringBuilder a = new StringBuilder(str.length());
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            switch (c) {
+                case '%':
+                case '\t':
+                case '\r':
+                case '\n':
+                case '+':
+                case ']':
+                case '=':
+                    a.append('%');
+                    a.append(HEXCHARS[(c & 0xF0) >>> 4]);
+                    a.append(HEXCHARS[c & 0xF]);
+                    break;
+                case ' ':
+                    if (i == 0 || i == (str.length()-1))
+                        a.append('+');
+                    else
+                        a.append(' ');
+                    break;
+                default:
+                    a.append(c);
+            }
+        }
+        return a.toString();
+    }
+
+    private static String legacyUnescape(String str) {
+        StringBuilder b = new StringBuilder(str.length());
+        int i = 0;
+        int l = str.length();
+        while (l > 0) {
+            char c = str.charAt(i);
+            if (c == '+') {
+                b.append(' ');
+                i++;
+                l--;
+            } else {
+                if (l >= 3 && c == '%') {
+                    try {
+                        b.append((char)Short.parseShort(str.substring(i + 1, i + 3), 16));
+                        i+=3;
+                        l-=3;
+                    } catch (NumberFormatException ex) {
+                        b.append(c);
+                        i++;
+                        l--;
+                    }
+                } else {
+                    b.append(c);
+                    i++;
+                    l--;
+                }
+            }
+        }
+        b.trimToSize();
+        return b.toString();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(EscapeBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2015 Nuke Sparrow <nukesparrow@bitmessage.ch>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.nukesparrow.ini.benchmarks;
+
+import com.github.nukesparrow.ini.Ini;
+import com.github.nukesparrow.ini.IniKey;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Typed getters with cached decoded values versus parsing value on every
+ * call, as they did before, and {@link IniKey} handles. Run with -prof gc
+ * to see allocation rate.
+ *
+ * Run {@link #main(java.lang.String[])} with test classpath.
+ *
+ * @author Nuke Sparrow <nukesparrow@bitmessage.ch>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TypedGetBenchmark {
+
+    private Ini ini;
+    private Ini.Section section;
+    private IniKey<Integer> timeout;
+    private IniKey<Integer> missing;
+
+    @Setup
+    public void setup() {
+        ini = new Ini();
+        section = ini.section("server", true);
+        section.set("timeout", 15000);
+        section.set("ratio", 0.75);
+        timeout = IniKey.ofInt(ini, "server", "timeout", 1000);
+        missing = IniKey.ofInt(ini, "client", "timeout", 1000);
+    }
+
+    @Benchmark
+    public int getInt() {
+        return section.get("timeout", 1000);
+    }
+
+    @Benchmark
+    public int getIntLegacy() {
+        String v = section.get("timeout");
+        return v == null || v.isEmpty() ? 1000 : Integer.valueOf(v);
+    }
+
+    @Benchmark
+    public int getIntByName() {
+        return ini.section("server").get("timeout", 1000);
+    }
+
+    @Benchmark
+    public int getIntKey() {
+        return timeout.get();
+    }
+
+    @Benchmark
+    public int getMissingSectionByName() {
+        return ini.section("client").get("timeout", 1000);
+    }
+
+    @Benchmark
+    public int getMissingSectionKey() {
+        return missing.get();
+    }
+
+    @Benchmark
+    public double getDouble() {
+        return section.get("ratio", 1.0);
+    }
+
+    @Benchmark
+    public double getDoubleLegacy() {
+        String v = section.get("ratio");
+        return v == null || v.isEmpty() ? 1.0 : Double.valueOf(v);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(TypedGetBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}